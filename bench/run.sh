@@ -0,0 +1,13 @@
+#!/bin/sh
+# Builds the Memory module against the stand-in OSP runtime in bench/stubs
+# (instead of OSP.jar) and runs a benchmark. MAIN picks the class to run.
+#
+#   bench/run.sh -frames 30,1024 -pageBits 6 -patterns zipf
+#   MAIN=osp.Memory.TranslationBenchmark bench/run.sh
+set -e
+cd "$(dirname "$0")/.."
+OUT=${OUT:-/tmp/osp-memory-bench}
+rm -rf "$OUT"
+mkdir -p "$OUT"
+javac -nowarn -d "$OUT" $(find src bench/stubs bench/src -name '*.java')
+exec java ${JAVA_OPTS:--Xmx4g} -cp "$OUT" ${MAIN:-osp.Memory.MemoryBenchmark} "$@"
@@ -0,0 +1,210 @@
+package osp.Memory;
+
+import java.util.*;
+import osp.IFLModules.*;
+import osp.Tasks.*;
+import osp.Threads.*;
+import osp.Utilities.*;
+
+/**
+Purpose: Stress test for concurrent mode (see Concurrency). Each Java thread
+		 runs one task that refers its pages as fast as it can, with more
+		 pages in all than there are frames, so the tasks keep taking frames
+		 from each other. Every few thousand references a thread stops the
+		 faults and checks the frame table:
+
+		 	- a frame that holds a page is the page's frame, and the page is
+		 	  valid and among its task's resident pages
+		 	- no page is in two frames, and no frame is in the free pool while
+		 	  it holds a page, is reserved or is locked
+		 	- no frame was ever reserved for one task while another held it
+
+		 It prints the throughput for each thread count and exits with status
+		 1 if any check failed. Run it with
+
+		 	MAIN=osp.Memory.ConcurrencyStress bench/run.sh -threads 1,2,4,8
+
+		 Options (lists are comma-separated):
+		 	-frames		frame count (1024)
+		 	-pageBits	PageAddressBits (10)
+		 	-threads	thread counts (1,2,4)
+		 	-refs		references per thread (1000000)
+		 	-pattern	access pattern (zipf)
+		 	-policy		replacement policy (SecondChance)
+		 	-writes		percentage of references that are writes (50)
+		 	-checkEvery	references between checks, per thread (4096)
+
+@OSPProject Memory
+*/
+public class ConcurrencyStress
+{
+	static int frames = 1024;
+	static int pageBits = 10;
+	static int[] threadCounts = { 1, 2, 4 };
+	static int refs = 1000000;
+	static String pattern = "zipf";
+	static String policyName = ReplacementPolicy.DEFAULT;
+	static int writePercentage = 50;
+	static int checkEvery = 4096;
+
+	static volatile String failure;
+	static long checks;
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String option = args[i];
+			String value = args[i + 1];
+			if (option.equals("-frames"))
+				frames = Integer.parseInt(value);
+			else if (option.equals("-pageBits"))
+				pageBits = Integer.parseInt(value);
+			else if (option.equals("-threads"))
+				threadCounts = MemoryBenchmark.parseInts(value);
+			else if (option.equals("-refs"))
+				refs = Integer.parseInt(value);
+			else if (option.equals("-pattern"))
+				pattern = value;
+			else if (option.equals("-policy"))
+				policyName = value;
+			else if (option.equals("-writes"))
+				writePercentage = Integer.parseInt(value);
+			else if (option.equals("-checkEvery"))
+				checkEvery = Integer.parseInt(value);
+			else
+				throw new IllegalArgumentException("unknown option " + option);
+		}
+		if (args.length % 2 != 0)
+			throw new IllegalArgumentException("missing value for " + args[args.length - 1]);
+
+		System.out.println(String.format("%8s %8s %8s %-10s %12s %10s %12s %8s  %s",
+			"threads", "frames", "pageBits", "pattern", "references", "faults", "refs/s", "checks", "note"));
+		for (int threads : threadCounts)
+			run(threads);
+		if (failure != null) {
+			System.out.println("FAILED: " + failure);
+			System.exit(1);
+		}
+	}
+
+	static void run(int threadCount) throws InterruptedException
+	{
+		IflMMU.configure(frames, pageBits + MemoryBenchmark.OFFSET_BITS, pageBits);
+		MMU.init();
+		MMU.policy = ReplacementPolicy.create(policyName);
+		MMU.policy.freeTarget = MMU.lowWater;
+		MemoryMetrics.dumpFile = null;
+//		The module's figures at the end are part of the output.
+		MMU.report = true;
+		Concurrency.enabled = true;
+		MMU.tlb = null;
+		Prefetcher.enabled = false;
+		checks = 0;
+
+		final TaskCB[] tasks = new TaskCB[threadCount];
+		Thread[] workers = new Thread[threadCount];
+		for (int t = 0; t < threadCount; t++)
+			tasks[t] = MemoryBenchmark.newTask();
+		for (int t = 0; t < threadCount; t++) {
+			final TaskCB task = tasks[t];
+			final int seed = t;
+			workers[t] = new Thread() {
+				public void run() {
+					refer(task, tasks, seed);
+				}
+			};
+		}
+		long faultsBefore = MemoryMetrics.total.faults;
+		long start = System.nanoTime();
+		for (Thread worker : workers)
+			worker.start();
+		for (Thread worker : workers)
+			worker.join();
+		long time = System.nanoTime() - start;
+
+		Concurrency.faultLock.lock();
+		try {
+			check(tasks);
+		} finally {
+			Concurrency.faultLock.unlock();
+		}
+		long references = MemoryMetrics.totals().references();
+		if (references != (long) threadCount * refs)
+			fail(references + " references counted, " + (long) threadCount * refs + " made");
+		System.out.println(String.format("%8d %8d %8d %-10s %12d %10d %12.0f %8d  %s",
+			threadCount, frames, pageBits, pattern, references, MemoryMetrics.total.faults - faultsBefore,
+			references * 1e9 / time, checks, Concurrency.slowReferences.sum() + " under the fault lock, "
+				+ Concurrency.conflicts.get() + " reservation conflicts"));
+
+		for (TaskCB task : tasks)
+			task.getPageTable().do_deallocateMemory();
+		Concurrency.enabled = false;
+	}
+
+	static void refer(TaskCB task, TaskCB[] tasks, int seed)
+	{
+		Random random = new Random(seed);
+		ReferenceGenerator generator = new ReferenceGenerator(pattern, 1 << pageBits, seed);
+		ThreadCB thread = new ThreadCB(task);
+		for (int i = 1; i <= refs && failure == null; i++) {
+			int type = random.nextInt(100) < writePercentage ? GlobalVariables.MemoryWrite : GlobalVariables.MemoryRead;
+			PageTableEntry page = MMU.do_refer(MemoryBenchmark.address(generator.nextPage(), random), type, thread);
+			if (page.getTask() != task)
+				fail("task " + task.getID() + " got a page of task " + page.getTask().getID());
+			if (i % checkEvery == 0) {
+				Concurrency.faultLock.lock();
+				try {
+					check(tasks);
+				} finally {
+					Concurrency.faultLock.unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	Purpose: Checks the frame table. Called with the fault lock held, so only
+			 reference and dirty bits can change meanwhile.
+	*/
+	static void check(TaskCB[] tasks)
+	{
+		checks++;
+		IdentityHashMap<PageTableEntry, FrameTableEntry> holder = new IdentityHashMap<PageTableEntry, FrameTableEntry>();
+		for (int i = 0; i < MMU.getFrameTableSize(); i++) {
+			FrameTableEntry frame = MMU.getFrame(i);
+			PageTableEntry page = frame.getPage();
+			boolean pooled = MMU.freeFrames.contains(i);
+			if (pooled && (page != null || frame.isReserved() || frame.getLockCount() > 0))
+				fail("frame " + i + " is in the free pool but is in use");
+			if (page == null)
+				continue;
+			FrameTableEntry other = holder.put(page, frame);
+			if (other != null)
+				fail("page " + page.getID() + " of task " + page.getTask().getID() + " is in frames "
+					+ other.getID() + " and " + i);
+			if (page.getFrame() != frame)
+				fail("frame " + i + " holds page " + page.getID() + ", which is in "
+					+ (page.getFrame() == null ? "no frame" : "frame " + page.getFrame().getID()));
+			else if (!page.isValid())
+				fail("frame " + i + " holds invalid page " + page.getID());
+			else if (!page.getTask().getPageTable().residentPages.contains(page.getID()))
+				fail("page " + page.getID() + " of task " + page.getTask().getID() + " is not counted resident");
+		}
+		for (TaskCB task : tasks) {
+			PageTable pageTable = task.getPageTable();
+			for (int p = 0; p < pageTable.pages.length; p++) {
+				PageTableEntry page = pageTable.pages[p];
+				if (page.isValid() && holder.get(page) != page.getFrame())
+					fail("valid page " + p + " of task " + task.getID() + " is not in its frame");
+			}
+		}
+		if (Concurrency.conflicts.get() != 0)
+			fail(Concurrency.conflicts.get() + " frames reserved for two tasks at once");
+	}
+
+	static void fail(String message)
+	{
+		if (failure == null)
+			failure = message;
+	}
+}
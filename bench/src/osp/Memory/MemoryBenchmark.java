@@ -0,0 +1,406 @@
+package osp.Memory;
+
+import java.util.*;
+import osp.IFLModules.*;
+import osp.Tasks.*;
+import osp.Threads.*;
+import osp.FileSys.*;
+import osp.Hardware.*;
+import osp.Utilities.*;
+import osp.Devices.*;
+
+/**
+Purpose: Benchmarks the hot paths of the Memory module against the stand-in
+		 OSP runtime in bench/stubs, so that no simulation has to be run:
+
+		 	refer-hit		MMU.do_refer when every referenced page is resident
+		 	refer-fault		MMU.do_refer over more pages than frames, with
+		 					several tasks taking turns on the CPU; each
+		 					reference is a clock tick, and the page-out
+		 					daemon runs when its interval is up
+		 	handle-fault	PageFaultHandler.do_handlePageFault with a full frame table
+		 	select-victim	the replacement policy's part of handle-fault
+		 	free-frame		getFreeFrame() followed by giving the frame back
+		 	num-free		numFreeFrames()
+		 	lock-range		PageTableEntry.lockRange() and unlockRange() of
+		 					8-page I/O buffers of a new task
+		 	lock-pages		the same buffers locked with do_lock() a page at a time
+		 	deallocate		PageTable.do_deallocateMemory() of a task with resident pages
+		 	create-task		new PageTable for a task
+
+		 Every benchmark runs for each combination of frame count, page
+		 address bits and access pattern. Run it with bench/run.sh, e.g.
+
+		 	bench/run.sh -frames 30,1024,1048576 -pageBits 6,12 -patterns uniform,zipf
+
+		 Options (lists are comma-separated):
+		 	-frames		frame counts (30,1024,65536,1048576)
+		 	-pageBits	PageAddressBits values (6,10,14)
+		 	-patterns	access patterns (uniform,zipf,sequential,local)
+		 	-policy		replacement policy (SecondChance)
+		 	-refs		references per measurement (1000000)
+		 	-tasks		tasks sharing memory in refer-fault (4)
+		 	-writes		percentage of references that are writes (50)
+		 	-writeCluster	SwapWriteCluster (from params.osp)
+		 	-readAround	SwapReadAround (from params.osp)
+		 	-pageTable	PageTableType, Flat or Inverted (from params.osp)
+		 	-csv		print CSV instead of a table
+
+@OSPProject Memory
+*/
+public class MemoryBenchmark
+{
+	static final int OFFSET_BITS = 10;
+	static final int QUANTUM = 64;
+
+	static int[] frameCounts = { 30, 1024, 65536, 1 << 20 };
+	static int[] pageBitsList = { 6, 10, 14 };
+	static String[] patterns = ReferenceGenerator.PATTERNS;
+	static String policyName = ReplacementPolicy.DEFAULT;
+	static int refs = 1000000;
+	static int taskCount = 4;
+	static int writePercentage = 50;
+	static int writeCluster = -1;
+	static int readAround = -1;
+	static String pageTableType;
+	static boolean csv;
+
+	static long sink;
+
+	public static void main(String[] args)
+	{
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (option.equals("-csv")) {
+				csv = true;
+				continue;
+			}
+			if (i + 1 >= args.length)
+				throw new IllegalArgumentException("missing value for " + option);
+			String value = args[++i];
+			if (option.equals("-frames"))
+				frameCounts = parseInts(value);
+			else if (option.equals("-pageBits"))
+				pageBitsList = parseInts(value);
+			else if (option.equals("-patterns"))
+				patterns = value.split(",");
+			else if (option.equals("-policy"))
+				policyName = value;
+			else if (option.equals("-refs"))
+				refs = Integer.parseInt(value);
+			else if (option.equals("-tasks"))
+				taskCount = Integer.parseInt(value);
+			else if (option.equals("-writes"))
+				writePercentage = Integer.parseInt(value);
+			else if (option.equals("-writeCluster"))
+				writeCluster = Integer.parseInt(value);
+			else if (option.equals("-readAround"))
+				readAround = Integer.parseInt(value);
+			else if (option.equals("-pageTable"))
+				pageTableType = value;
+			else
+				throw new IllegalArgumentException("unknown option " + option);
+		}
+
+		if (csv)
+			System.out.println("benchmark,frames,pageBits,pattern,policy,operations,nsPerOp,note");
+		else
+			System.out.println(String.format("%-14s %8s %8s %-10s %-12s %10s %10s  %s",
+				"benchmark", "frames", "pageBits", "pattern", "policy", "ops", "ns/op", "note"));
+
+		for (int frames : frameCounts)
+			for (int pageBits : pageBitsList)
+				for (String pattern : patterns)
+					run(frames, pageBits, pattern);
+	}
+
+	static void run(int frames, int pageBits, String pattern)
+	{
+		int pages = 1 << pageBits;
+		Random random = new Random(frames * 31 + pageBits);
+
+//		refer-hit: one task whose referenced pages all fit in memory.
+		setUp(frames, pageBits);
+		TaskCB task = newTask();
+		ThreadCB thread = new ThreadCB(task);
+		IflMMU.setPTBR(task.getPageTable());
+		int hotPages = Math.min(pages, frames);
+		for (int page = 0; page < hotPages; page++)
+			MMU.do_refer(address(page, random), GlobalVariables.MemoryRead, thread);
+		ReferenceGenerator hot = new ReferenceGenerator(pattern, hotPages, 1);
+		int[] stream = new int[refs];
+		for (int i = 0; i < refs; i++)
+			stream[i] = address(hot.nextPage(), random);
+		int[] types = referenceTypes(random);
+		referLoop(stream, types, thread, refs / 10);
+		long faultsBefore = MemoryMetrics.total.faults;
+		long start = System.nanoTime();
+		referLoop(stream, types, thread, refs);
+		long time = System.nanoTime() - start;
+		report("refer-hit", frames, pageBits, pattern, refs, time,
+			(MemoryMetrics.total.faults - faultsBefore) + " faults" + tlbNote());
+		String tableMemory = task.getPageTable().memoryReport();
+		task.getPageTable().do_deallocateMemory();
+
+//		refer-fault: several tasks over all their pages, taking turns.
+		setUp(frames, pageBits);
+		TaskCB[] tasks = new TaskCB[taskCount];
+		ThreadCB[] threads = new ThreadCB[taskCount];
+		for (int t = 0; t < taskCount; t++) {
+			tasks[t] = newTask();
+			threads[t] = new ThreadCB(tasks[t]);
+		}
+		ReferenceGenerator all = new ReferenceGenerator(pattern, pages, 2);
+		for (int i = 0; i < refs; i++)
+			stream[i] = address(all.nextPage(), random);
+		referLoop(stream, types, tasks, threads, refs / 10);
+		faultsBefore = MemoryMetrics.total.faults;
+		long poolFaultsBefore = PageFaultHandler.poolFaults;
+		long daemonFreedBefore = PageOutDaemon.framesFreed;
+		OpenFile.resetCounters();
+		start = System.nanoTime();
+		referLoop(stream, types, tasks, threads, refs);
+		time = System.nanoTime() - start;
+		long faults = MemoryMetrics.total.faults - faultsBefore;
+		report("refer-fault", frames, pageBits, pattern, refs, time,
+			String.format("%.2f%% faults (%d from the pool), %d swap-ins, %d swap-outs, %d I/O ticks, %d freed by the daemon",
+				100.0 * faults / refs, PageFaultHandler.poolFaults - poolFaultsBefore,
+				OpenFile.reads, OpenFile.writes, OpenFile.ioTicks, PageOutDaemon.framesFreed - daemonFreedBefore));
+
+//		handle-fault and select-victim: a new task faulting its pages in with memory full.
+		TaskCB faulting = newTask();
+		ThreadCB faultingThread = new ThreadCB(faulting);
+		ReferenceGenerator order = new ReferenceGenerator(pattern, pages, 3);
+		int calls = 0;
+		long policyNanos = MMU.policy.selectionNanos;
+		long selections = MMU.policy.selections;
+		start = System.nanoTime();
+		for (int i = 0; i < Math.min(refs, 4 * pages); i++) {
+			PageTableEntry page = faulting.getPageTable().pages[order.nextPage()];
+			if (page.isValid())
+				continue;
+			PageFaultHandler.do_handlePageFault(faultingThread, types[i], page);
+			calls++;
+		}
+		time = System.nanoTime() - start;
+		report("handle-fault", frames, pageBits, pattern, calls, time, "");
+		report("select-victim", frames, pageBits, pattern, MMU.policy.selections - selections,
+			MMU.policy.selectionNanos - policyNanos, MMU.policy.framesScanned + " frames scanned in total");
+
+//		free-frame and num-free: with whatever is free now, plus one freed frame.
+		faulting.getPageTable().do_deallocateMemory();
+		int loops = refs;
+		start = System.nanoTime();
+		for (int i = 0; i < loops; i++) {
+			FrameTableEntry frame = PageFaultHandler.getFreeFrame();
+			if (frame != null)
+				PageFaultHandler.releaseFrame(frame);
+		}
+		time = System.nanoTime() - start;
+		report("free-frame", frames, pageBits, pattern, loops, time, PageFaultHandler.numFreeFrames() + " free");
+		start = System.nanoTime();
+		long sum = 0;
+		for (int i = 0; i < loops; i++)
+			sum += PageFaultHandler.numFreeFrames();
+		time = System.nanoTime() - start;
+		sink += sum;
+		report("num-free", frames, pageBits, pattern, loops, time, "");
+
+//		lock-range and lock-pages: the I/O buffers of two new tasks, locked
+//		and unlocked a buffer at a time and a page at a time. Each locked
+//		buffer is read into from a file, which OSP marks dirty behind the
+//		module's back; checkFileData then makes sure no such page was lost.
+		int span = Math.min(8, pages);
+		int buffers = Math.max(1, Math.min(256, pages / span));
+		for (int by = 0; by < 2; by++) {
+			TaskCB locking = newTask();
+			ThreadCB lockingThread = new ThreadCB(locking);
+//			The buffers hold data, to be read from swap.
+			for (PageTableEntry page : locking.getPageTable().pages)
+				page.backed = true;
+			boolean[] read = new boolean[pages];
+			faultsBefore = MemoryMetrics.total.faults;
+			OpenFile.resetCounters();
+			start = System.nanoTime();
+			for (int b = 0; b < buffers; b++) {
+				PageTableEntry[] buffer = locking.getPageTable().pages;
+				PageTableEntry first = buffer[b * span];
+				if (by == 0) {
+					if (first.lockRange(new IORB(lockingThread, first), span) == GlobalVariables.SUCCESS) {
+						fileRead(buffer, b * span, span, read, lockingThread);
+						first.unlockRange(span);
+					}
+					continue;
+				}
+//				A page that could not be locked (no frame left) is not unlocked.
+				int locked = 0;
+				while (locked < span && buffer[b * span + locked].do_lock(new IORB(lockingThread, buffer[b * span + locked])) == GlobalVariables.SUCCESS)
+					locked++;
+				fileRead(buffer, b * span, locked, read, lockingThread);
+				for (int i = 0; i < locked; i++)
+					buffer[b * span + i].do_unlock();
+			}
+			time = System.nanoTime() - start;
+			report(by == 0 ? "lock-range" : "lock-pages", frames, pageBits, pattern, buffers, time,
+				(MemoryMetrics.total.faults - faultsBefore) + " faults, " + OpenFile.reads + " swap-ins, "
+					+ OpenFile.ioTicks + " I/O ticks");
+			checkFileData(locking, read, lockingThread);
+			locking.getPageTable().do_deallocateMemory();
+		}
+
+//		deallocate: tear down the tasks of refer-fault.
+		start = System.nanoTime();
+		for (int t = 0; t < taskCount; t++)
+			tasks[t].getPageTable().do_deallocateMemory();
+		time = System.nanoTime() - start;
+		report("deallocate", frames, pageBits, pattern, taskCount, time, "");
+
+//		load-control: new tasks that first want all their pages, so that the
+//		working-set control deactivates them, then keep to a few pages each
+//		(with the odd reference elsewhere, so that they still fault now and
+//		then) and are brought back.
+		TaskCB[] loaded = new TaskCB[taskCount];
+		ThreadCB[] loadedThreads = new ThreadCB[taskCount];
+		for (int t = 0; t < taskCount; t++) {
+			loaded[t] = newTask();
+			loadedThreads[t] = new ThreadCB(loaded[t]);
+		}
+		ReferenceGenerator wide = new ReferenceGenerator(pattern, pages, 4);
+		ReferenceGenerator narrow = new ReferenceGenerator(pattern, Math.max(1, Math.min(pages, frames / (2 * taskCount))), 5);
+		for (int i = 0; i < refs; i++)
+			stream[i] = address(i < refs / 2 || i % 251 == 0 ? wide.nextPage() : narrow.nextPage(), random);
+		long deactivations = WorkingSets.deactivations;
+		long reactivations = WorkingSets.reactivations;
+		start = System.nanoTime();
+		referLoop(stream, types, loaded, loadedThreads, refs);
+		time = System.nanoTime() - start;
+		report("load-control", frames, pageBits, pattern, refs, time,
+			(WorkingSets.deactivations - deactivations) + " deactivations, "
+				+ (WorkingSets.reactivations - reactivations) + " reactivations");
+		for (int t = 0; t < taskCount; t++)
+			loaded[t].getPageTable().do_deallocateMemory();
+
+//		create-task: page tables for new tasks.
+		int created = Math.max(1, Math.min(1000, refs / pages));
+		TaskCB[] newTasks = new TaskCB[created];
+		start = System.nanoTime();
+		for (int i = 0; i < created; i++)
+			newTasks[i] = newTask();
+		time = System.nanoTime() - start;
+		report("create-task", frames, pageBits, pattern, created, time, tableMemory);
+		for (int i = 0; i < created; i++)
+			newTasks[i].getPageTable().do_deallocateMemory();
+	}
+
+	static void setUp(int frames, int pageBits)
+	{
+		IflMMU.configure(frames, pageBits + OFFSET_BITS, pageBits);
+		MMU.init();
+		MMU.policy = ReplacementPolicy.create(policyName);
+		MMU.policy.freeTarget = MMU.lowWater;
+		MemoryMetrics.dumpFile = null;
+//		The module's figures at the end are part of the output.
+		MMU.report = true;
+		if (writeCluster > 0)
+			SwapCluster.writeCluster = writeCluster;
+		if (readAround > 0)
+			SwapCluster.readAround = readAround;
+		if (pageTableType != null)
+			MMU.invertedTable = pageTableType.equalsIgnoreCase("Inverted") ? new InvertedPageTable(frames) : null;
+	}
+
+	static TaskCB newTask()
+	{
+		TaskCB task = new TaskCB();
+		task.setPageTable(new PageTable(task));
+		return task;
+	}
+
+	static int address(int page, Random random)
+	{
+		return (page << OFFSET_BITS) | random.nextInt(1 << OFFSET_BITS);
+	}
+
+	static int[] referenceTypes(Random random)
+	{
+		int[] types = new int[refs];
+		for (int i = 0; i < refs; i++)
+			types[i] = random.nextInt(100) < writePercentage ? GlobalVariables.MemoryWrite : GlobalVariables.MemoryRead;
+		return types;
+	}
+
+	static void referLoop(int[] stream, int[] types, ThreadCB thread, int count)
+	{
+		for (int i = 0; i < count; i++)
+			sink += MMU.do_refer(stream[i], types[i], thread).getID();
+	}
+
+	static void referLoop(int[] stream, int[] types, TaskCB[] tasks, ThreadCB[] threads, int count)
+	{
+		int current = 0;
+		IflMMU.setPTBR(tasks[current].getPageTable());
+		for (int i = 0; i < count; i++) {
+			if (i % QUANTUM == 0) {
+				current = (current + 1) % tasks.length;
+				IflMMU.setPTBR(tasks[current].getPageTable());
+			}
+			sink += MMU.do_refer(stream[i], types[i], threads[current]).getID();
+			HClock.advance(1);
+			Daemon.runDue();
+		}
+	}
+
+	/**
+	Purpose: Completes a file read into "count" locked pages from "from" on,
+			 as the OSP disk interrupt handler does: their frames are set
+			 dirty directly.
+	*/
+	static void fileRead(PageTableEntry[] pages, int from, int count, boolean[] read, ThreadCB thread)
+	{
+		for (int i = from; i < from + count; i++) {
+			DiskInterruptHandler.fileReadDone(new IORB(thread, pages[i]));
+			read[i] = true;
+		}
+	}
+
+	/**
+	Purpose: Pages out everything that can go, then checks that each page of
+			 "task" that was read into from a file ("read") and is no longer in
+			 memory was counted as written, and so saved before it went.
+	*/
+	static void checkFileData(TaskCB task, boolean[] read, ThreadCB thread)
+	{
+		PageOutDaemon.reclaim(MMU.getFrameTableSize(), thread);
+		PageTableEntry[] pages = task.getPageTable().pages;
+		for (int i = 0; i < pages.length; i++) {
+			if (read[i] && !pages[i].isValid() && (pages[i].writes == 0 || !pages[i].swapCopyCurrent()))
+				throw new IllegalStateException("the file data read into " + pages[i] + " was dropped unsaved");
+		}
+	}
+
+	static String tlbNote()
+	{
+		return (MMU.tlb == null ? "" : ", " + MMU.tlb.hits + " TLB hits")
+			+ (MMU.invertedTable == null ? "" : ", inverted page table");
+	}
+
+	static void report(String benchmark, int frames, int pageBits, String pattern, long operations, long nanos, String note)
+	{
+		double perOp = operations == 0 ? 0 : (double) nanos / operations;
+		if (csv)
+			System.out.println(benchmark + "," + frames + "," + pageBits + "," + pattern + "," + MMU.policy.getName()
+				+ "," + operations + "," + String.format("%.1f", perOp) + ",\"" + note + "\"");
+		else
+			System.out.println(String.format("%-14s %8d %8d %-10s %-12s %10d %10.1f  %s",
+				benchmark, frames, pageBits, pattern, MMU.policy.getName(), operations, perOp, note));
+	}
+
+	static int[] parseInts(String list)
+	{
+		String[] items = list.split(",");
+		int[] values = new int[items.length];
+		for (int i = 0; i < items.length; i++)
+			values[i] = Integer.parseInt(items[i].trim());
+		return values;
+	}
+}
@@ -0,0 +1,344 @@
+package osp.Memory;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import osp.IFLModules.*;
+import osp.Tasks.*;
+import osp.Threads.*;
+import osp.FileSys.*;
+import osp.Utilities.*;
+
+/**
+Purpose: Runs the Memory module, against the stand-in OSP runtime in
+		 bench/stubs, for every point of a grid of [Memory] settings, the
+		 points in parallel on a fork-join pool, and reports fault rate,
+		 swap I/O and page-fault handler time for each in one table, CSV
+		 or JSON-lines file.
+
+		 The module keeps its state in statics, so each point runs in a
+		 class loader of its own that loads the module and the stubs afresh
+		 from the class path, and reads a parameter file of its own: the
+		 base file with the point's settings in its [Memory] section, and
+		 no metrics file, MBean or trace. Each point replays the same kind
+		 of synthetic workload as refer-fault in MemoryBenchmark: "-tasks"
+		 tasks take turns on the CPU, and every reference is a clock tick.
+		 The workload follows the OSP keys FramesOfPhysicalMemory,
+		 PageAddressBits, MemoryReadPercentage, MemoryWritePercentage and
+		 UseLocalAccessPattern (local or uniform references); every other
+		 key goes to the module as it is. Run it with
+
+		 	MAIN=osp.Memory.ParameterSweep bench/run.sh -set FramesOfPhysicalMemory=30,64,128 -set ReplacementPolicy=SecondChance,ARC -out sweep.csv
+
+		 Options:
+		 	-set Key=v1,v2,...	values of a [Memory] key to sweep (repeatable)
+		 	-params			the base parameter file (Misc/params.osp)
+		 	-refs			references per point (200000)
+		 	-tasks			tasks taking turns (4)
+		 	-seed			seed of the workload (1)
+		 	-parallel		points run at once (the number of processors)
+		 	-out			write CSV, or JSON lines for *.json, to a file
+		 	-csv			print CSV instead of a table
+
+		 The results of a point do not depend on the others or on
+		 -parallel; its times do, as the points share the processors.
+
+@OSPProject Memory
+*/
+public class ParameterSweep
+{
+	static String baseFile = MemoryParameters.PARAMS_FILE;
+	static List<String> keys = new ArrayList<String>();
+	static List<String[]> values = new ArrayList<String[]>();
+	static int refs = 200000;
+	static int taskCount = 4;
+	static long seed = 1;
+	static int parallel = Runtime.getRuntime().availableProcessors();
+	static String outFile;
+	static boolean csv;
+
+//	What run() returns, by index.
+	static final String[] RESULTS = { "references", "faults", "swapIns", "swapOuts", "ioTicks",
+		"handlerCalls", "handlerNanos", "nanos" };
+
+	public static void main(String[] args) throws Exception
+	{
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (option.equals("-csv")) {
+				csv = true;
+				continue;
+			}
+			if (i + 1 >= args.length)
+				throw new IllegalArgumentException("missing value for " + option);
+			String value = args[++i];
+			if (option.equals("-set")) {
+				int equals = value.indexOf('=');
+				if (equals <= 0)
+					throw new IllegalArgumentException("-set wants Key=v1,v2,...: " + value);
+				keys.add(value.substring(0, equals));
+				values.add(value.substring(equals + 1).split(","));
+			} else if (option.equals("-params"))
+				baseFile = value;
+			else if (option.equals("-refs"))
+				refs = Integer.parseInt(value);
+			else if (option.equals("-tasks"))
+				taskCount = Integer.parseInt(value);
+			else if (option.equals("-seed"))
+				seed = Long.parseLong(value);
+			else if (option.equals("-parallel"))
+				parallel = Math.max(1, Integer.parseInt(value));
+			else if (option.equals("-out"))
+				outFile = value;
+			else
+				throw new IllegalArgumentException("unknown option " + option);
+		}
+		if (!new File(baseFile).canRead())
+			throw new IllegalArgumentException("cannot read " + baseFile);
+
+		List<String[]> grid = grid();
+		List<Point> points = new ArrayList<Point>();
+		ForkJoinPool pool = new ForkJoinPool(parallel);
+		long start = System.nanoTime();
+		for (String[] setting : grid) {
+			Point point = new Point(setting);
+			points.add(point);
+			pool.execute(point);
+		}
+
+		PrintWriter out = outFile == null ? null : new PrintWriter(new FileWriter(outFile));
+		boolean json = outFile != null && outFile.endsWith(".json");
+		if (out != null && !json)
+			out.println(csvHeader());
+		if (csv)
+			System.out.println(csvHeader());
+		else
+			System.out.println(tableRow(keys.toArray(new String[0]), new String[] { "refs", "faults", "rate",
+				"swapIns", "swapOuts", "I/O ticks", "ns/fault", "ms" }));
+		for (Point point : points) {
+			long[] result = point.join();
+			if (out != null)
+				out.println(json ? toJson(point.setting, result) : toCsv(point.setting, result));
+			if (csv)
+				System.out.println(toCsv(point.setting, result));
+			else
+				System.out.println(tableRow(point.setting, new String[] { "" + result[0], "" + result[1],
+					String.format("%.4f", faultRate(result)), "" + result[2], "" + result[3], "" + result[4],
+					"" + nanosPerFault(result), "" + result[7] / 1000000 }));
+		}
+		pool.shutdown();
+		if (out != null)
+			out.close();
+		System.err.println("Memory: " + points.size() + " points on " + parallel + " threads in "
+			+ (System.nanoTime() - start) / 1000000 + " ms" + (outFile == null ? "" : ", written to " + outFile));
+	}
+
+	/**
+	Purpose: Every combination of the swept values, the last key varying fastest.
+	*/
+	static List<String[]> grid()
+	{
+		List<String[]> grid = new ArrayList<String[]>();
+		grid.add(new String[keys.size()]);
+		for (int k = 0; k < keys.size(); k++) {
+			List<String[]> next = new ArrayList<String[]>();
+			for (String[] setting : grid)
+				for (String value : values.get(k)) {
+					String[] point = setting.clone();
+					point[k] = value.trim();
+					next.add(point);
+				}
+			grid = next;
+		}
+		return grid;
+	}
+
+	/**
+	Purpose: One point of the grid, run in a class loader of its own.
+	*/
+	static class Point extends RecursiveTask<long[]>
+	{
+		private static final long serialVersionUID = 1L;
+
+		final String[] setting;
+
+		Point(String[] setting)
+		{
+			this.setting = setting;
+		}
+
+		protected long[] compute()
+		{
+			File params = null;
+			URLClassLoader loader = null;
+			try {
+				params = File.createTempFile("sweep", ".osp");
+				writeParams(params, setting);
+				loader = isolatedLoader();
+				Method run = loader.loadClass(ParameterSweep.class.getName())
+					.getDeclaredMethod("run", String.class, int.class, int.class, long.class);
+				return (long[]) run.invoke(null, params.getPath(), refs, taskCount, seed);
+			} catch (InvocationTargetException e) {
+				throw new RuntimeException("point " + Arrays.toString(setting) + " failed", e.getCause());
+			} catch (Exception e) {
+				throw new RuntimeException("point " + Arrays.toString(setting) + " failed", e);
+			} finally {
+				if (params != null)
+					params.delete();
+				if (loader != null) {
+					try { loader.close(); } catch (IOException e) { }
+				}
+			}
+		}
+	}
+
+	/**
+	Purpose: A class loader for the class path that shares nothing but the
+			 Java platform with this one.
+	*/
+	static URLClassLoader isolatedLoader() throws MalformedURLException
+	{
+		String[] path = System.getProperty("java.class.path").split(File.pathSeparator);
+		URL[] urls = new URL[path.length];
+		for (int i = 0; i < path.length; i++)
+			urls[i] = new File(path[i]).toURI().toURL();
+		return new URLClassLoader(urls, null);
+	}
+
+	/**
+	Purpose: Copies the base parameter file to "file", with the point's values
+			 in the [Memory] section, and without the module's output files.
+	*/
+	static void writeParams(File file, String[] setting) throws IOException
+	{
+		Map<String, String> memory = new LinkedHashMap<String, String>();
+		for (int k = 0; k < keys.size(); k++)
+			memory.put(keys.get(k), setting[k]);
+		memory.put("MetricsFile", "");
+		memory.put("MetricsMBean", "0");
+		memory.put("TraceFile", "");
+
+		BufferedReader in = new BufferedReader(new FileReader(baseFile));
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			boolean inMemory = false;
+			String line;
+			while ((line = in.readLine()) != null) {
+				String trimmed = line.trim();
+				if (trimmed.startsWith("[")) {
+					inMemory = trimmed.equals("[Memory]");
+					out.println(line);
+//					The point's values go first; the base file's lines for them are dropped.
+					if (inMemory) {
+						for (Map.Entry<String, String> entry : memory.entrySet())
+							out.println(entry.getKey() + " " + entry.getValue());
+					}
+					continue;
+				}
+				if (inMemory && trimmed.length() > 0 && !trimmed.startsWith("#")
+						&& memory.containsKey(trimmed.split("\\s+", 2)[0]))
+					continue;
+				out.println(line);
+			}
+		} finally {
+			in.close();
+			out.close();
+		}
+	}
+
+	/**
+	Purpose: Runs one point, in its own class loader.
+
+	Output:
+		The figures named by RESULTS.
+	*/
+	public static long[] run(String paramsFile, int refs, int taskCount, long seed)
+	{
+		MemoryParameters.use(paramsFile);
+		int frames = MemoryParameters.getInt("FramesOfPhysicalMemory", 30);
+		int pageBits = MemoryParameters.getInt("PageAddressBits", 6);
+		int reads = MemoryParameters.getInt("MemoryReadPercentage", 50);
+		int writes = MemoryParameters.getInt("MemoryWritePercentage", 50);
+		int writePercentage = reads + writes == 0 ? 0 : 100 * writes / (reads + writes);
+		String pattern = MemoryParameters.getBoolean("UseLocalAccessPattern", false) ? "local" : "uniform";
+
+//		The sweep prints the figures; no point prints a report at exit.
+		MMU.reportScheduled = true;
+		IflMMU.configure(frames, pageBits + MemoryBenchmark.OFFSET_BITS, pageBits);
+		MMU.init();
+		TaskCB[] tasks = new TaskCB[taskCount];
+		ThreadCB[] threads = new ThreadCB[taskCount];
+		for (int t = 0; t < taskCount; t++) {
+			tasks[t] = MemoryBenchmark.newTask();
+			threads[t] = new ThreadCB(tasks[t]);
+		}
+		ReferenceGenerator generator = new ReferenceGenerator(pattern, 1 << pageBits, seed);
+		Random random = new Random(seed);
+		int[] stream = new int[refs];
+		int[] types = new int[refs];
+		for (int i = 0; i < refs; i++) {
+			stream[i] = MemoryBenchmark.address(generator.nextPage(), random);
+			types[i] = random.nextInt(100) < writePercentage ? GlobalVariables.MemoryWrite : GlobalVariables.MemoryRead;
+		}
+
+		OpenFile.resetCounters();
+		long start = System.nanoTime();
+		MemoryBenchmark.referLoop(stream, types, tasks, threads, refs);
+		long time = System.nanoTime() - start;
+		MemoryCounters counters = MemoryMetrics.totals();
+		return new long[] { counters.references(), counters.faults, OpenFile.reads, OpenFile.writes,
+			OpenFile.ioTicks, IflPageFaultHandler.calls, IflPageFaultHandler.nanos, time };
+	}
+
+	static double faultRate(long[] result)
+	{
+		return result[1] / (double) Math.max(1, result[0]);
+	}
+
+	static long nanosPerFault(long[] result)
+	{
+		return result[6] / Math.max(1, result[5]);
+	}
+
+	static String csvHeader()
+	{
+		StringBuilder header = new StringBuilder();
+		for (String key : keys)
+			header.append(key).append(',');
+		return header.append("references,faults,faultRate,swapIns,swapOuts,ioTicks,handlerNsPerFault,ms").toString();
+	}
+
+	static String toCsv(String[] setting, long[] result)
+	{
+		StringBuilder row = new StringBuilder();
+		for (String value : setting)
+			row.append(value).append(',');
+		return row.append(result[0]).append(',').append(result[1]).append(',')
+			.append(String.format("%.4f", faultRate(result))).append(',').append(result[2]).append(',')
+			.append(result[3]).append(',').append(result[4]).append(',').append(nanosPerFault(result)).append(',')
+			.append(result[7] / 1000000).toString();
+	}
+
+	static String toJson(String[] setting, long[] result)
+	{
+		StringBuilder row = new StringBuilder("{\"settings\":{");
+		for (int k = 0; k < keys.size(); k++)
+			row.append(k == 0 ? "" : ",").append('"').append(keys.get(k)).append("\":\"").append(setting[k]).append('"');
+		row.append("}");
+		for (int i = 0; i < RESULTS.length; i++)
+			row.append(",\"").append(RESULTS[i]).append("\":").append(result[i]);
+		return row.append(",\"faultRate\":").append(String.format("%.6f", faultRate(result))).append('}').toString();
+	}
+
+	static String tableRow(String[] setting, String[] figures)
+	{
+		StringBuilder row = new StringBuilder();
+		for (String value : setting)
+			row.append(String.format("%-14s ", value));
+		for (String figure : figures)
+			row.append(String.format("%10s ", figure));
+		return row.toString().trim();
+	}
+}
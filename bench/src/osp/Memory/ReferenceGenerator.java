@@ -0,0 +1,87 @@
+package osp.Memory;
+
+import java.util.*;
+
+/**
+Purpose: Produces a stream of virtual page numbers for the benchmarks, with
+		 one of four access patterns:
+		 	uniform		every page equally likely
+		 	zipf		page popularity follows a Zipf law (s = 0.99); the
+		 				popular pages are spread over the address space
+		 	sequential	pages in order, wrapping around
+		 	local		mostly small steps around the current page, like
+		 				OSP's UseLocalAccessPattern, with an occasional jump
+
+@OSPProject Memory
+*/
+class ReferenceGenerator
+{
+	static final String[] PATTERNS = { "uniform", "zipf", "sequential", "local" };
+
+	private static final double ZIPF_EXPONENT = 0.99;
+	private static final double LOCAL_JUMP = 0.1;
+	private static final int LOCAL_STEP = 4;
+
+	private final String pattern;
+	private final int pages;
+	private final Random random;
+	private double[] zipfCumulative;
+	private int[] zipfPage;
+	private int current;
+
+	ReferenceGenerator(String pattern, int pages, long seed)
+	{
+		this.pattern = pattern;
+		this.pages = pages;
+		this.random = new Random(seed);
+		if (pattern.equals("zipf"))
+			buildZipf();
+		else if (!Arrays.asList(PATTERNS).contains(pattern))
+			throw new IllegalArgumentException("unknown access pattern " + pattern);
+	}
+
+	private void buildZipf()
+	{
+		zipfCumulative = new double[pages];
+		double sum = 0;
+		for (int rank = 0; rank < pages; rank++) {
+			sum += 1.0 / Math.pow(rank + 1, ZIPF_EXPONENT);
+			zipfCumulative[rank] = sum;
+		}
+		for (int rank = 0; rank < pages; rank++)
+			zipfCumulative[rank] /= sum;
+
+		zipfPage = new int[pages];
+		for (int i = 0; i < pages; i++)
+			zipfPage[i] = i;
+		for (int i = pages - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = zipfPage[i];
+			zipfPage[i] = zipfPage[j];
+			zipfPage[j] = swap;
+		}
+	}
+
+	int nextPage()
+	{
+		switch (pattern.charAt(0)) {
+		case 'u':
+			return random.nextInt(pages);
+		case 'z': {
+			int rank = Arrays.binarySearch(zipfCumulative, random.nextDouble());
+			if (rank < 0)
+				rank = -rank - 1;
+			return zipfPage[Math.min(rank, pages - 1)];
+		}
+		case 's':
+			current = (current + 1) % pages;
+			return current;
+		default:
+			if (random.nextDouble() < LOCAL_JUMP)
+				current = random.nextInt(pages);
+			else
+				current = Math.floorMod(current + random.nextInt(2 * LOCAL_STEP + 1) - LOCAL_STEP, pages);
+			return current;
+		}
+	}
+}
@@ -0,0 +1,358 @@
+package osp.Memory;
+
+import java.io.*;
+import java.util.*;
+
+/**
+Purpose: Tells how far the replacement policies are from ideal on a trace
+		 written by ReferenceTrace. For each frame count it prints
+
+		 	lru		the faults of LRU, from the miss-ratio curve
+		 	opt		the faults of Belady's OPT (MIN), which evicts the page
+		 			whose next use is furthest away
+		 	policy	the faults of the module itself (TraceReplay) with each
+		 			policy given
+
+		 The miss-ratio curve comes from one pass over the trace (Mattson's
+		 stack algorithm): the stack distance of a reference is the number
+		 of distinct pages referenced since the last reference to its page,
+		 counted with a Fenwick tree over the positions where each page was
+		 last referenced, and LRU with c frames faults on exactly the
+		 references whose distance exceeds c. On large traces -sample R
+		 keeps only the pages whose hash falls under R and scales their
+		 distances and counts by 1/R (SHARDS). OPT is simulated for each
+		 frame count, with the next use of every reference computed
+		 beforehand.
+
+		 A page is a page number of a task; page locks count as references,
+		 and a task's teardown drops its pages. The module's faults are not
+		 quite comparable: its page-out daemon and working-set quotas evict
+		 pages early, and read-around and the prefetcher bring pages in
+		 without a fault.
+
+		 With -target, it also prints the fewest frames (the
+		 FramesOfPhysicalMemory setting) for which LRU and OPT stay at or
+		 under that fault rate. Run it with
+
+		 	MAIN=osp.Memory.TraceAnalyzer bench/run.sh memory.trace -target 0.05
+
+		 Options (lists are comma-separated):
+		 	-frames		frame counts (powers of two up to the pages in the trace)
+		 	-policy		policies to replay, or none (SecondChance)
+		 	-sample		SHARDS sampling rate for the curve, 0 < R <= 1 (1)
+		 	-target		fault rate to size memory for
+		 	-csv		print CSV instead of a table
+
+@OSPProject Memory
+*/
+public class TraceAnalyzer
+{
+	static final int INFINITY = Integer.MAX_VALUE;
+
+	static String traceFile;
+	static int[] frameCounts;
+	static String[] policies = { ReplacementPolicy.DEFAULT };
+	static double sampleRate = 1.0;
+	static double target = -1;
+	static boolean csv;
+
+//	The references as dense page IDs in trace order, the page IDs of each
+//	task, and the reference count before each teardown with its task.
+	static int[] stream;
+	static int length;
+	static int pages;
+	static Map<Integer, List<Integer>> pagesOf = new HashMap<Integer, List<Integer>>();
+	static int[] teardownAt = new int[16];
+	static int[] teardownTask = new int[16];
+	static int teardowns;
+
+//	Stack distance counts (beyond[d]: references at a distance over d, scaled
+//	by 1/R when sampling), and references to pages never seen before.
+	static double[] beyond;
+	static double coldMisses;
+
+	public static void main(String[] args) throws IOException
+	{
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (option.equals("-csv")) {
+				csv = true;
+				continue;
+			}
+			if (!option.startsWith("-")) {
+				traceFile = option;
+				continue;
+			}
+			if (i + 1 >= args.length)
+				throw new IllegalArgumentException("missing value for " + option);
+			String value = args[++i];
+			if (option.equals("-frames"))
+				frameCounts = MemoryBenchmark.parseInts(value);
+			else if (option.equals("-policy"))
+				policies = value.equalsIgnoreCase("none") ? new String[0] : value.split(",");
+			else if (option.equals("-sample"))
+				sampleRate = Double.parseDouble(value);
+			else if (option.equals("-target"))
+				target = Double.parseDouble(value);
+			else
+				throw new IllegalArgumentException("unknown option " + option);
+		}
+		if (traceFile == null)
+			throw new IllegalArgumentException("no trace file given");
+		if (sampleRate <= 0 || sampleRate > 1)
+			throw new IllegalArgumentException("-sample must be in (0, 1]");
+		TraceReplay.checkInput(traceFile);
+
+		load(new ReferenceTrace.Reader(traceFile));
+		long start = System.nanoTime();
+		stackDistances();
+		long curveTime = System.nanoTime() - start;
+		if (frameCounts == null) {
+			List<Integer> counts = new ArrayList<Integer>();
+			for (int c = 1; c < pages; c <<= 1)
+				counts.add(c);
+			counts.add(Math.max(1, pages));
+			frameCounts = new int[counts.size()];
+			for (int i = 0; i < frameCounts.length; i++)
+				frameCounts[i] = counts.get(i);
+		}
+
+		System.out.println((csv ? "# " : "") + length + " references to " + pages + " pages, " + teardowns
+			+ " teardowns; curve in " + curveTime / 1000000 + " ms"
+			+ (sampleRate < 1 ? String.format(" (sampled at %.4f)", sampleRate) : ""));
+		StringBuilder header = new StringBuilder(csv ? "frames,lru,lruRate,opt,optRate" : String.format(
+			"%8s %10s %8s %10s %8s", "frames", "lru", "rate", "opt", "rate"));
+		for (String policy : policies)
+			header.append(csv ? "," + policy + "," + policy + "Rate" : String.format(" %12s %8s", policy, "rate"));
+		System.out.println(header);
+		for (int frames : frameCounts) {
+			long lru = lruMisses(frames);
+			long opt = optMisses(frames);
+			StringBuilder row = new StringBuilder(csv ? frames + "," + lru + "," + String.format("%.4f", rate(lru))
+				+ "," + opt + "," + String.format("%.4f", rate(opt)) : String.format("%8d %10d %8.4f %10d %8.4f",
+				frames, lru, rate(lru), opt, rate(opt)));
+			for (String policy : policies) {
+				MemoryCounters counters = TraceReplay.replay(traceFile, frames, policy);
+				double rate = TraceReplay.faultRate(counters);
+				row.append(csv ? "," + counters.faults + "," + String.format("%.4f", rate)
+					: String.format(" %12d %8.4f", counters.faults, rate));
+			}
+			System.out.println(row);
+		}
+
+		if (target >= 0) {
+			int lruFrames = 1;
+			while (lruFrames < pages && rate(lruMisses(lruFrames)) > target)
+				lruFrames++;
+			int low = 1;
+			int high = Math.max(1, pages);
+//			OPT is a stack algorithm too: its faults never go up with more frames.
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (rate(optMisses(middle)) <= target)
+					high = middle;
+				else
+					low = middle + 1;
+			}
+			System.out.println((csv ? "# " : "") + "fault rate " + target + ": " + lruFrames + " frames with LRU, "
+				+ low + " with OPT" + (rate(lruMisses(pages)) > target ? " (not reachable: too many first references)" : ""));
+		}
+	}
+
+	static double rate(long misses)
+	{
+		return length == 0 ? 0.0 : (double) misses / length;
+	}
+
+	/**
+	Purpose: Reads the trace into stream, numbering the (task, page number)
+			 pairs as they first appear.
+	*/
+	static void load(ReferenceTrace.Reader trace)
+	{
+		int offsetBits = trace.virtualAddressBits - trace.pageAddressBits;
+		int pageMask = (1 << trace.pageAddressBits) - 1;
+		Map<Long, Integer> ids = new HashMap<Long, Integer>();
+		stream = new int[1 << 16];
+		length = 0;
+		while (trace.next()) {
+			int pageNumber;
+			if (trace.event == ReferenceTrace.READ || trace.event == ReferenceTrace.WRITE)
+				pageNumber = (trace.address >>> offsetBits) & pageMask;
+			else if (trace.event == ReferenceTrace.LOCK)
+				pageNumber = trace.page;
+			else {
+				if (trace.event == ReferenceTrace.TEARDOWN) {
+					if (teardowns == teardownAt.length) {
+						teardownAt = Arrays.copyOf(teardownAt, teardowns * 2);
+						teardownTask = Arrays.copyOf(teardownTask, teardowns * 2);
+					}
+					teardownAt[teardowns] = length;
+					teardownTask[teardowns++] = trace.task;
+				}
+				continue;
+			}
+			Long key = ((long) trace.task << 32) | pageNumber;
+			Integer id = ids.get(key);
+			if (id == null) {
+				id = ids.size();
+				ids.put(key, id);
+				List<Integer> list = pagesOf.get(trace.task);
+				if (list == null) {
+					list = new ArrayList<Integer>();
+					pagesOf.put(trace.task, list);
+				}
+				list.add(id);
+			}
+			if (length == stream.length)
+				stream = Arrays.copyOf(stream, length * 2);
+			stream[length++] = id;
+		}
+		pages = ids.size();
+	}
+
+	/**
+	Purpose: Fills distances and coldMisses in one pass over the stream.
+			 A Fenwick tree over the stream positions holds a 1 at the last
+			 reference to each (sampled) page, so the distance of a reference
+			 is the sum from its page's previous position on.
+	*/
+	static void stackDistances()
+	{
+		int threshold = (int) (sampleRate * (1 << 24));
+		double weight = 1.0 / sampleRate;
+		long[] tree = new long[length + 1];
+		int[] last = new int[pages];
+		Arrays.fill(last, -1);
+		long[] distances = new long[pages + 2];
+		coldMisses = 0;
+		int position = 0;
+		int teardown = 0;
+		for (int i = 0; i < length; i++) {
+			while (teardown < teardowns && teardownAt[teardown] == i)
+				dropTask(teardownTask[teardown++], tree, last);
+			int id = stream[i];
+			if ((hash(id) & 0xffffff) >= threshold)
+				continue;
+			position++;
+			if (last[id] < 0) {
+				coldMisses += weight;
+			} else {
+				long distance = sum(tree, position - 1) - sum(tree, last[id] - 1);
+				add(tree, last[id], -1);
+				distances[(int) Math.min(pages + 1, (long) (distance * weight))]++;
+			}
+			add(tree, position, 1);
+			last[id] = position;
+		}
+		beyond = new double[pages + 2];
+		for (int d = pages; d >= 0; d--)
+			beyond[d] = beyond[d + 1] + distances[d + 1] * weight;
+	}
+
+	private static void dropTask(int task, long[] tree, int[] last)
+	{
+		List<Integer> ids = pagesOf.get(task);
+		if (ids == null)
+			return;
+		for (int id : ids) {
+			if (last[id] > 0)
+				add(tree, last[id], -1);
+			last[id] = -1;
+		}
+	}
+
+	private static void add(long[] tree, int position, long delta)
+	{
+		for (; position < tree.length; position += position & -position)
+			tree[position] += delta;
+	}
+
+	private static long sum(long[] tree, int position)
+	{
+		long sum = 0;
+		for (; position > 0; position -= position & -position)
+			sum += tree[position];
+		return sum;
+	}
+
+	private static int hash(int id)
+	{
+		int h = id * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	Purpose: LRU's faults with "frames" frames: first references and
+			 references at a stack distance over "frames".
+	*/
+	static long lruMisses(int frames)
+	{
+		return Math.round(coldMisses + beyond[Math.min(frames, pages + 1)]);
+	}
+
+	/**
+	Purpose: OPT's faults with "frames" frames. The resident pages are kept
+			 in a heap by next use, furthest first; an entry whose page has
+			 since been referenced again or evicted is skipped when it comes up.
+	*/
+	static long optMisses(int frames)
+	{
+		int[] next = nextUses();
+		int[] nextOf = new int[pages];
+		boolean[] resident = new boolean[pages];
+		PriorityQueue<Long> heap = new PriorityQueue<Long>(Math.max(1, frames), Collections.<Long>reverseOrder());
+		int used = 0;
+		long misses = 0;
+		int teardown = 0;
+		for (int i = 0; i < length; i++) {
+			while (teardown < teardowns && teardownAt[teardown] == i) {
+				List<Integer> ids = pagesOf.get(teardownTask[teardown++]);
+				for (int k = 0; ids != null && k < ids.size(); k++) {
+					if (resident[ids.get(k)]) {
+						resident[ids.get(k)] = false;
+						used--;
+					}
+				}
+			}
+			int id = stream[i];
+			if (!resident[id]) {
+				misses++;
+				if (used == frames) {
+					while (true) {
+						long entry = heap.poll();
+						int victim = (int) entry;
+						if (resident[victim] && nextOf[victim] == (int) (entry >>> 32)) {
+							resident[victim] = false;
+							break;
+						}
+					}
+				} else {
+					used++;
+				}
+				resident[id] = true;
+			}
+			nextOf[id] = next[i];
+			heap.add(((long) next[i] << 32) | id);
+		}
+		return misses;
+	}
+
+	private static int[] nextUseCache;
+
+	/** The position of the next reference to the same page, or INFINITY. */
+	private static int[] nextUses()
+	{
+		if (nextUseCache != null)
+			return nextUseCache;
+		int[] next = new int[length];
+		int[] seen = new int[pages];
+		Arrays.fill(seen, INFINITY);
+		for (int i = length - 1; i >= 0; i--) {
+			next[i] = seen[stream[i]];
+			seen[stream[i]] = i;
+		}
+		nextUseCache = next;
+		return next;
+	}
+}
@@ -0,0 +1,181 @@
+package osp.Memory;
+
+import java.io.*;
+import java.util.*;
+import osp.Devices.*;
+import osp.IFLModules.*;
+import osp.Tasks.*;
+import osp.Threads.*;
+import osp.Hardware.*;
+import osp.Utilities.*;
+
+/**
+Purpose: Replays a trace written by ReferenceTrace (TraceFile key in
+		 Misc/params.osp) through the Memory module, against the stand-in OSP
+		 runtime in bench/stubs, for each combination of frame count and
+		 replacement policy. Tasks are made up where the trace creates their
+		 page tables, and threads where the trace first names them; every
+		 other event is a clock tick, and the daemons run when their
+		 interval is up. Page addresses and page-table size come from the
+		 trace. Run it with
+
+		 	MAIN=osp.Memory.TraceReplay bench/run.sh memory.trace -frames 16,32,64 -policy SecondChance,ARC
+
+		 Options (lists are comma-separated):
+		 	-frames		frame counts (the one the trace was recorded with)
+		 	-policy		replacement policies (SecondChance)
+		 	-csv		print CSV instead of a table
+
+@OSPProject Memory
+*/
+public class TraceReplay
+{
+	static String traceFile;
+	static int[] frameCounts;
+	static String[] policies = { ReplacementPolicy.DEFAULT };
+	static boolean csv;
+
+	static long events;
+	static long time;
+
+	public static void main(String[] args) throws IOException
+	{
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (option.equals("-csv")) {
+				csv = true;
+				continue;
+			}
+			if (!option.startsWith("-")) {
+				traceFile = option;
+				continue;
+			}
+			if (i + 1 >= args.length)
+				throw new IllegalArgumentException("missing value for " + option);
+			String value = args[++i];
+			if (option.equals("-frames"))
+				frameCounts = MemoryBenchmark.parseInts(value);
+			else if (option.equals("-policy"))
+				policies = value.split(",");
+			else
+				throw new IllegalArgumentException("unknown option " + option);
+		}
+		if (traceFile == null)
+			throw new IllegalArgumentException("no trace file given");
+		checkInput(traceFile);
+		if (frameCounts == null)
+			frameCounts = new int[] { new ReferenceTrace.Reader(traceFile).frames };
+
+		if (csv)
+			System.out.println("frames,policy,events,references,faults,faultRate,cleanEvictions,dirtyEvictions,swapIns,swapOuts,ms");
+		else
+			System.out.println(String.format("%8s %-12s %10s %10s %10s %8s %10s %10s %8s %8s %8s",
+				"frames", "policy", "events", "refs", "faults", "rate", "clean-ev", "dirty-ev", "swapIns", "swapOuts", "ms"));
+		for (int frames : frameCounts)
+			for (String policy : policies) {
+				MemoryCounters counters = replay(traceFile, frames, policy);
+				double rate = faultRate(counters);
+				if (csv)
+					System.out.println(frames + "," + MMU.policy.getName() + "," + events + "," + counters.references()
+						+ "," + counters.faults + "," + String.format("%.4f", rate) + "," + counters.cleanEvictions + ","
+						+ counters.dirtyEvictions + "," + counters.swapIns + "," + counters.swapOuts + "," + time / 1000000);
+				else
+					System.out.println(String.format("%8d %-12s %10d %10d %10d %8.4f %10d %10d %8d %8d %8d",
+						frames, MMU.policy.getName(), events, counters.references(), counters.faults, rate,
+						counters.cleanEvictions, counters.dirtyEvictions, counters.swapIns, counters.swapOuts, time / 1000000));
+			}
+	}
+
+	/**
+	Purpose: Runs a trace through the module with "frames" frames and the
+			 policy named "policyName".
+
+	Output:
+		The module's totals; events and time are set to the events replayed
+		and the nanoseconds it took.
+	*/
+	static MemoryCounters replay(String traceFile, int frames, String policyName) throws IOException
+	{
+		ReferenceTrace.Reader trace = new ReferenceTrace.Reader(traceFile);
+		IflMMU.configure(frames, trace.virtualAddressBits, trace.pageAddressBits);
+		MMU.init();
+		MMU.policy = ReplacementPolicy.create(policyName);
+		MMU.policy.freeTarget = MMU.lowWater;
+		MemoryMetrics.dumpFile = null;
+//		The module's figures at the end are part of the output.
+		MMU.report = true;
+//		A TraceFile in params.osp would record the replay.
+		ReferenceTrace.close();
+
+		Map<Integer, TaskCB> tasks = new HashMap<Integer, TaskCB>();
+		Map<Integer, ThreadCB> threads = new HashMap<Integer, ThreadCB>();
+		events = 0;
+		long start = System.nanoTime();
+		while (trace.next()) {
+			events++;
+			TaskCB task = tasks.get(trace.task);
+			if (task == null) {
+				task = MemoryBenchmark.newTask();
+				tasks.put(trace.task, task);
+			}
+//			Creating a task takes no time.
+			if (trace.event == ReferenceTrace.CREATION)
+				continue;
+			if (trace.event == ReferenceTrace.TEARDOWN) {
+				task.getPageTable().do_deallocateMemory();
+				tasks.remove(trace.task);
+			} else if (trace.event == ReferenceTrace.UNLOCK) {
+				PageTableEntry page = task.getPageTable().pages[trace.page];
+				if (page.getFrame() != null)
+					page.do_unlock();
+			} else {
+				refer(trace, task, threads);
+			}
+			HClock.advance(1);
+			Daemon.runDue();
+		}
+		time = System.nanoTime() - start;
+
+		MemoryCounters counters = MemoryMetrics.totals();
+		for (TaskCB task : tasks.values())
+			task.getPageTable().do_deallocateMemory();
+		return counters;
+	}
+
+	/**
+	Purpose: Refuses a trace that MMU.init would start writing over.
+	*/
+	static void checkInput(String traceFile) throws IOException
+	{
+		String recording = MemoryParameters.get("TraceFile", "");
+		if (recording.length() > 0 && new File(recording).getCanonicalPath().equals(new File(traceFile).getCanonicalPath()))
+			throw new IllegalArgumentException(traceFile + " is the TraceFile of " + MemoryParameters.PARAMS_FILE
+				+ ", and would be written over");
+	}
+
+	/** Faults per reference or lock. */
+	static double faultRate(MemoryCounters counters)
+	{
+		return counters.faults / (double) Math.max(1, counters.references() + counters.locks);
+	}
+
+	/**
+	Purpose: Replays a reference or a lock by the trace's current thread.
+	*/
+	static void refer(ReferenceTrace.Reader trace, TaskCB task, Map<Integer, ThreadCB> threads)
+	{
+		ThreadCB thread = threads.get(trace.thread);
+		if (thread == null || thread.getTask() != task) {
+			thread = new ThreadCB(task);
+			threads.put(trace.thread, thread);
+		}
+		IflMMU.setPTBR(task.getPageTable());
+		if (trace.event == ReferenceTrace.LOCK) {
+			PageTableEntry page = task.getPageTable().pages[trace.page];
+			page.do_lock(new IORB(thread, page));
+		} else {
+			MMU.do_refer(trace.address, trace.event == ReferenceTrace.WRITE
+				? GlobalVariables.MemoryWrite : GlobalVariables.MemoryRead, thread);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package osp.Memory;
+
+import java.util.*;
+
+/**
+Purpose: Measures the cost of turning a virtual address into a page number,
+		 the way MMU.do_refer used to do it (Math.pow, a cast and an integer
+		 divide on every reference) against the shift-and-mask that MMU.init
+		 now prepares, for several PageAddressBits settings.
+
+		 The OSP runtime cannot run outside the simulator, so this benchmark
+		 carries its own copy of both formulas. Run it with:
+
+		 	javac -d /tmp/bench bench/src/osp/Memory/TranslationBenchmark.java
+		 	java -cp /tmp/bench osp.Memory.TranslationBenchmark
+
+@OSPProject Memory
+*/
+public class TranslationBenchmark
+{
+	static final int VIRTUAL_ADDRESS_BITS = 16;
+	static final int ADDRESSES = 1 << 20;
+	static final int WARMUP_ROUNDS = 5;
+	static final int ROUNDS = 10;
+
+//	Not final, like the values behind MMU.getVirtualAddressBits() and
+//	MMU.getPageAddressBits(), so the JIT cannot fold them.
+	static int virtualAddressBits = VIRTUAL_ADDRESS_BITS;
+	static int pageAddressBits;
+	static int offsetBits;
+	static int pageMask;
+
+	static long sink;
+
+	static int powDivide(int address)
+	{
+		return address / (int) Math.pow(2, virtualAddressBits - pageAddressBits);
+	}
+
+	static int shiftMask(int address)
+	{
+		return (address >>> offsetBits) & pageMask;
+	}
+
+	static double powDivideRound(int[] addresses)
+	{
+		long start = System.nanoTime();
+		long sum = 0;
+		for (int i = 0; i < addresses.length; i++)
+			sum += powDivide(addresses[i]);
+		long time = System.nanoTime() - start;
+		sink += sum;
+		return (double) time / addresses.length;
+	}
+
+	static double shiftMaskRound(int[] addresses)
+	{
+		long start = System.nanoTime();
+		long sum = 0;
+		for (int i = 0; i < addresses.length; i++)
+			sum += shiftMask(addresses[i]);
+		long time = System.nanoTime() - start;
+		sink += sum;
+		return (double) time / addresses.length;
+	}
+
+	public static void main(String[] args)
+	{
+		Random random = new Random(42);
+		int[] addresses = new int[ADDRESSES];
+		for (int i = 0; i < addresses.length; i++)
+			addresses[i] = random.nextInt(1 << VIRTUAL_ADDRESS_BITS);
+
+		System.out.println("PageAddressBits  pow/divide ns/ref  shift/mask ns/ref  speedup");
+		for (int bits = 2; bits <= 14; bits += 2) {
+			pageAddressBits = bits;
+			offsetBits = virtualAddressBits - pageAddressBits;
+			pageMask = (1 << pageAddressBits) - 1;
+
+			for (int i = 0; i < addresses.length; i++) {
+				if (powDivide(addresses[i]) != shiftMask(addresses[i]))
+					throw new IllegalStateException("translations differ for address " + addresses[i]);
+			}
+
+			for (int round = 0; round < WARMUP_ROUNDS; round++) {
+				powDivideRound(addresses);
+				shiftMaskRound(addresses);
+			}
+			double before = Double.MAX_VALUE;
+			double after = Double.MAX_VALUE;
+			for (int round = 0; round < ROUNDS; round++) {
+				before = Math.min(before, powDivideRound(addresses));
+				after = Math.min(after, shiftMaskRound(addresses));
+			}
+			System.out.println(String.format("%15d  %17.3f  %17.3f  %6.1fx", bits, before, after, before / after));
+		}
+		if (sink == 42)
+			System.out.println();
+	}
+}
@@ -0,0 +1,19 @@
+package osp.Devices;
+
+import osp.Memory.*;
+
+/**
+Stand-in for the part of the OSP disk interrupt handler that touches memory:
+when a read from a file into a page completes, it marks the page's frame
+referenced and dirty itself, with the frame's setters, not through the
+Memory module.
+*/
+public class DiskInterruptHandler
+{
+	public static void fileReadDone(IORB iorb)
+	{
+		FrameTableEntry frame = iorb.getPage().getFrame();
+		frame.setReferenced(true);
+		frame.setDirty(true);
+	}
+}
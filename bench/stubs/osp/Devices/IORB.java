@@ -0,0 +1,30 @@
+package osp.Devices;
+
+import osp.IFLModules.*;
+import osp.Memory.*;
+import osp.Threads.*;
+
+/**
+Stand-in for the OSP IORB: the thread and the page of an I/O request.
+*/
+public class IORB extends Event
+{
+	private final ThreadCB thread;
+	private final PageTableEntry page;
+
+	public IORB(ThreadCB thread, PageTableEntry page)
+	{
+		this.thread = thread;
+		this.page = page;
+	}
+
+	public final ThreadCB getThread()
+	{
+		return thread;
+	}
+
+	public final PageTableEntry getPage()
+	{
+		return page;
+	}
+}
@@ -0,0 +1,8 @@
+package osp.FileSys;
+
+/**
+Stand-in for the OSP FileSys; the Memory module only imports it.
+*/
+public class FileSys
+{
+}
@@ -0,0 +1,50 @@
+package osp.FileSys;
+
+import osp.Hardware.*;
+import osp.Memory.*;
+import osp.Threads.*;
+
+/**
+Stand-in for a task's swap file. Reads and writes complete at once; each one
+advances the simulated clock by a seek cost proportional to the distance
+from the previous block, plus a transfer cost, so that benchmarks can see
+the effect of clustered I/O.
+*/
+public class OpenFile
+{
+	public static int seekTicksPerBlock = 1;
+	public static int transferTicks = 10;
+
+	public static long reads;
+	public static long writes;
+	public static long ioTicks;
+
+	private int lastBlock;
+
+	public final void read(int block, PageTableEntry page, ThreadCB thread)
+	{
+		reads++;
+		access(block);
+	}
+
+	public final void write(int block, PageTableEntry page, ThreadCB thread)
+	{
+		writes++;
+		access(block);
+	}
+
+	private void access(int block)
+	{
+		long ticks = (long) Math.abs(block - lastBlock) * seekTicksPerBlock + transferTicks;
+		lastBlock = block;
+		ioTicks += ticks;
+		HClock.advance(ticks);
+	}
+
+	public static void resetCounters()
+	{
+		reads = 0;
+		writes = 0;
+		ioTicks = 0;
+	}
+}
@@ -0,0 +1,18 @@
+package osp.Hardware;
+
+import osp.IFLModules.*;
+import osp.Interrupts.*;
+import osp.Utilities.*;
+
+/**
+Stand-in for the OSP CPU: a page fault interrupt runs the handler at once.
+*/
+public class CPU extends GlobalVariables
+{
+	public static void interrupt(int type)
+	{
+		if (type == PageFault)
+			IflPageFaultHandler.handlePageFault(InterruptVector.getThread(),
+				InterruptVector.getReferenceType(), InterruptVector.getPage());
+	}
+}
@@ -0,0 +1,19 @@
+package osp.Hardware;
+
+/**
+Stand-in for the OSP simulation clock.
+*/
+public class HClock
+{
+	private static long now;
+
+	public static final long get()
+	{
+		return now;
+	}
+
+	public static void advance(long ticks)
+	{
+		now += ticks;
+	}
+}
@@ -0,0 +1,50 @@
+package osp.IFLModules;
+
+import java.util.*;
+import osp.Hardware.*;
+import osp.Tasks.*;
+import osp.Threads.*;
+
+/**
+Stand-in for the OSP Daemon. OSP wakes daemons from its event engine; here a
+benchmark calls runDue() between references, which unleashes every daemon
+whose interval has passed on HClock. A daemon created again under the same
+name (MMU.init runs once per benchmark) replaces the old one.
+*/
+public class Daemon
+{
+	private static final Map<String, Daemon> daemons = new LinkedHashMap<String, Daemon>();
+
+	private final DaemonInterface daemon;
+	private final int interval;
+	private final ThreadCB thread = new ThreadCB(new TaskCB());
+	private long next;
+
+	private Daemon(DaemonInterface daemon, int interval)
+	{
+		this.daemon = daemon;
+		this.interval = Math.max(1, interval);
+		this.next = HClock.get() + this.interval;
+	}
+
+	public static void create(String name, DaemonInterface daemon, int interval)
+	{
+		daemons.put(name, new Daemon(daemon, interval));
+	}
+
+	public static void runDue()
+	{
+		long now = HClock.get();
+		for (Daemon d : daemons.values()) {
+			if (now >= d.next) {
+				d.next = now + d.interval;
+				d.daemon.unleash(d.thread);
+			}
+		}
+	}
+
+	public static void clear()
+	{
+		daemons.clear();
+	}
+}
@@ -0,0 +1,11 @@
+package osp.IFLModules;
+
+import osp.Threads.*;
+
+/**
+Stand-in for the OSP DaemonInterface.
+*/
+public interface DaemonInterface
+{
+	void unleash(ThreadCB thread);
+}
@@ -0,0 +1,38 @@
+package osp.IFLModules;
+
+import java.util.*;
+import osp.Threads.*;
+import osp.Utilities.*;
+
+/**
+Stand-in for the OSP Event. The stand-in runtime is synchronous, so threads
+are never really blocked; the waiting list is only kept for bookkeeping.
+*/
+public class Event extends GlobalVariables
+{
+	private final List<ThreadCB> waitingThreads = new ArrayList<ThreadCB>();
+	public static long notifications;
+
+	public void addThread(ThreadCB thread)
+	{
+		waitingThreads.add(thread);
+	}
+
+	public void removeThread(ThreadCB thread)
+	{
+		waitingThreads.remove(thread);
+	}
+
+	public int getNumberOfThreadsWaiting()
+	{
+		return waitingThreads.size();
+	}
+
+	public void notifyThreads()
+	{
+		notifications++;
+		for (int i = 0; i < waitingThreads.size(); i++)
+			waitingThreads.get(i).resume();
+		waitingThreads.clear();
+	}
+}
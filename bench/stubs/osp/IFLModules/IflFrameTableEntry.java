@@ -0,0 +1,100 @@
+package osp.IFLModules;
+
+import osp.Memory.*;
+import osp.Tasks.*;
+import osp.Utilities.*;
+
+/**
+Stand-in for the OSP IflFrameTableEntry: the same state and accessors,
+without OSP's consistency checks.
+*/
+public class IflFrameTableEntry extends GlobalVariables
+{
+	private final int id;
+	private boolean referenced;
+	private boolean dirty;
+	private TaskCB reserved;
+	private PageTableEntry page;
+	private int lockCount;
+
+	public IflFrameTableEntry(int frameID)
+	{
+		id = frameID;
+	}
+
+	public final boolean isReserved()
+	{
+		return reserved != null;
+	}
+
+	public final TaskCB getReserved()
+	{
+		return reserved;
+	}
+
+	public final void setReserved(TaskCB task)
+	{
+		reserved = task;
+	}
+
+	public final void setUnreserved(TaskCB task)
+	{
+		if (reserved == task)
+			reserved = null;
+	}
+
+	public final boolean isReferenced()
+	{
+		return referenced;
+	}
+
+	public final void setReferenced(boolean flag)
+	{
+		referenced = flag;
+	}
+
+	public final int getID()
+	{
+		return id;
+	}
+
+	public final boolean isDirty()
+	{
+		return dirty;
+	}
+
+	public final void setDirty(boolean flag)
+	{
+		dirty = flag;
+	}
+
+	public final void setPage(PageTableEntry page)
+	{
+		this.page = page;
+	}
+
+	public final PageTableEntry getPage()
+	{
+		return page;
+	}
+
+	public final int getLockCount()
+	{
+		return lockCount;
+	}
+
+	public final void incrementLockCount()
+	{
+		lockCount++;
+	}
+
+	public final void decrementLockCount()
+	{
+		lockCount--;
+	}
+
+	public String toString()
+	{
+		return "Frame(" + id + ")";
+	}
+}
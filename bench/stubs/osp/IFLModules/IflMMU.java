@@ -0,0 +1,59 @@
+package osp.IFLModules;
+
+import osp.Memory.*;
+import osp.Utilities.*;
+
+/**
+Stand-in for the OSP IflMMU. The frame table, the PTBR and the address
+sizes are plain statics that the benchmarks set with configure().
+*/
+public class IflMMU extends GlobalVariables
+{
+	private static FrameTableEntry[] frames = new FrameTableEntry[0];
+	private static PageTable ptbr;
+	private static int virtualAddressBits = 16;
+	private static int pageAddressBits = 6;
+
+	public static void configure(int frameCount, int virtualBits, int pageBits)
+	{
+		frames = new FrameTableEntry[frameCount];
+		virtualAddressBits = virtualBits;
+		pageAddressBits = pageBits;
+		ptbr = null;
+	}
+
+	public static final PageTable getPTBR()
+	{
+		return ptbr;
+	}
+
+	public static final void setPTBR(PageTable pageTable)
+	{
+		ptbr = pageTable;
+	}
+
+	public static final int getVirtualAddressBits()
+	{
+		return virtualAddressBits;
+	}
+
+	public static final int getPageAddressBits()
+	{
+		return pageAddressBits;
+	}
+
+	public static final FrameTableEntry getFrame(int index)
+	{
+		return frames[index];
+	}
+
+	public static final int getFrameTableSize()
+	{
+		return frames.length;
+	}
+
+	public static final void setFrame(int index, FrameTableEntry frame)
+	{
+		frames[index] = frame;
+	}
+}
@@ -0,0 +1,24 @@
+package osp.IFLModules;
+
+import osp.Memory.*;
+import osp.Threads.*;
+import osp.Utilities.*;
+
+/**
+Stand-in for the OSP IflPageFaultHandler: calls the student handler directly,
+and counts the calls and the time they took.
+*/
+public class IflPageFaultHandler extends GlobalVariables
+{
+	public static long calls;
+	public static long nanos;
+
+	public static final int handlePageFault(ThreadCB thread, int referenceType, PageTableEntry page)
+	{
+		long start = System.nanoTime();
+		int result = PageFaultHandler.do_handlePageFault(thread, referenceType, page);
+		nanos += System.nanoTime() - start;
+		calls++;
+		return result;
+	}
+}
@@ -0,0 +1,24 @@
+package osp.IFLModules;
+
+import osp.Memory.*;
+import osp.Tasks.*;
+import osp.Utilities.*;
+
+/**
+Stand-in for the OSP IflPageTable.
+*/
+public class IflPageTable extends GlobalVariables
+{
+	public PageTableEntry[] pages;
+	private final TaskCB task;
+
+	public IflPageTable(TaskCB ownerTask)
+	{
+		task = ownerTask;
+	}
+
+	public final TaskCB getTask()
+	{
+		return task;
+	}
+}
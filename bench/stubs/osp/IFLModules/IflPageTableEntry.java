@@ -0,0 +1,76 @@
+package osp.IFLModules;
+
+import osp.Memory.*;
+import osp.Tasks.*;
+import osp.Threads.*;
+
+/**
+Stand-in for the OSP IflPageTableEntry. As in OSP, setting the frame of a
+page also sets the page of the frame, a page is only put in a clean frame,
+and a valid page is not moved from one frame to another.
+*/
+public class IflPageTableEntry extends Event
+{
+	private final IflPageTable pageTable;
+	private final int id;
+	private FrameTableEntry frame;
+	private boolean valid;
+	private ThreadCB validatingThread;
+
+	public IflPageTableEntry(IflPageTable ownerPageTable, int pageNumber)
+	{
+		pageTable = ownerPageTable;
+		id = pageNumber;
+	}
+
+	public final void setFrame(FrameTableEntry frame)
+	{
+		if (this.frame != null && frame != null && valid)
+			throw new IllegalStateException("Attempt to put " + this + " in " + frame + " when it is already in " + this.frame);
+		if (frame != null && frame.isDirty())
+			throw new IllegalStateException("Attempt to allocate dirty frame " + frame + " to " + this);
+		this.frame = frame;
+		if (frame != null)
+			frame.setPage((PageTableEntry) this);
+	}
+
+	public final FrameTableEntry getFrame()
+	{
+		return frame;
+	}
+
+	public final TaskCB getTask()
+	{
+		return pageTable.getTask();
+	}
+
+	public final int getID()
+	{
+		return id;
+	}
+
+	public final boolean isValid()
+	{
+		return valid;
+	}
+
+	public final void setValid(boolean flag)
+	{
+		valid = flag;
+	}
+
+	public final void setValidatingThread(ThreadCB thread)
+	{
+		validatingThread = thread;
+	}
+
+	public final ThreadCB getValidatingThread()
+	{
+		return validatingThread;
+	}
+
+	public String toString()
+	{
+		return "Page(" + getTask().getID() + ":" + id + ")";
+	}
+}
@@ -0,0 +1,19 @@
+package osp.IFLModules;
+
+/**
+Stand-in for the OSP SystemEvent.
+*/
+public class SystemEvent extends Event
+{
+	private final String name;
+
+	public SystemEvent(String name)
+	{
+		this.name = name;
+	}
+
+	public String toString()
+	{
+		return name;
+	}
+}
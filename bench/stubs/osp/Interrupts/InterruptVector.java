@@ -0,0 +1,50 @@
+package osp.Interrupts;
+
+import osp.Memory.*;
+import osp.Threads.*;
+
+/**
+Stand-in for the OSP InterruptVector.
+*/
+public class InterruptVector
+{
+	private static int referenceType;
+	private static int interruptType;
+	private static PageTableEntry page;
+	private static ThreadCB thread;
+
+	public static final void setReferenceType(int type)
+	{
+		referenceType = type;
+	}
+
+	public static final int getReferenceType()
+	{
+		return referenceType;
+	}
+
+	public static final void setInterruptType(int type)
+	{
+		interruptType = type;
+	}
+
+	public static final void setPage(PageTableEntry p)
+	{
+		page = p;
+	}
+
+	public static final PageTableEntry getPage()
+	{
+		return page;
+	}
+
+	public static final void setThread(ThreadCB t)
+	{
+		thread = t;
+	}
+
+	public static final ThreadCB getThread()
+	{
+		return thread;
+	}
+}
@@ -0,0 +1,52 @@
+package osp.Tasks;
+
+import osp.FileSys.*;
+import osp.Memory.*;
+import osp.Utilities.*;
+
+/**
+Stand-in for the OSP TaskCB: a page table and a swap file.
+*/
+public class TaskCB extends GlobalVariables
+{
+	private static int nextID = 1;
+	private final int id = nextID++;
+	private PageTable pageTable;
+	private final OpenFile swapFile = new OpenFile();
+	private int status = TaskLive;
+
+	public final int getID()
+	{
+		return id;
+	}
+
+	public final PageTable getPageTable()
+	{
+		return pageTable;
+	}
+
+	public final void setPageTable(PageTable pageTable)
+	{
+		this.pageTable = pageTable;
+	}
+
+	public final OpenFile getSwapFile()
+	{
+		return swapFile;
+	}
+
+	public final int getStatus()
+	{
+		return status;
+	}
+
+	public final void kill()
+	{
+		status = TaskTerm;
+	}
+
+	public String toString()
+	{
+		return "Task(" + id + ")";
+	}
+}
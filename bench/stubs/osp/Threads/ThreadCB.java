@@ -0,0 +1,64 @@
+package osp.Threads;
+
+import osp.IFLModules.*;
+import osp.Tasks.*;
+import osp.Utilities.*;
+
+/**
+Stand-in for the OSP ThreadCB. There is only one real thread of control, so
+suspend() records the event and returns at once, as if the event had already
+happened; kill() lets a benchmark exercise the FAILURE paths.
+*/
+public class ThreadCB extends GlobalVariables
+{
+	private static int nextID;
+	private final int id = nextID++;
+	private final TaskCB task;
+	private int status = ThreadRunning;
+	public static long suspensions;
+	public static long dispatches;
+
+	public ThreadCB(TaskCB task)
+	{
+		this.task = task;
+	}
+
+	public final TaskCB getTask()
+	{
+		return task;
+	}
+
+	public final int getID()
+	{
+		return id;
+	}
+
+	public final int getStatus()
+	{
+		return status;
+	}
+
+	public final void kill()
+	{
+		status = ThreadKill;
+	}
+
+	public final void suspend(Event event)
+	{
+		suspensions++;
+	}
+
+	public final void resume()
+	{
+	}
+
+	public static final void dispatch()
+	{
+		dispatches++;
+	}
+
+	public String toString()
+	{
+		return "Thread(" + id + ")";
+	}
+}
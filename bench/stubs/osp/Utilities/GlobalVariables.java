@@ -0,0 +1,29 @@
+package osp.Utilities;
+
+/**
+Stand-in for the OSP GlobalVariables: the constants the Memory module uses,
+with the same values as in OSP.jar.
+*/
+public class GlobalVariables
+{
+	public static final int SUCCESS = 100;
+	public static final int FAILURE = 101;
+	public static final int NotEnoughMemory = 102;
+	public static final int DuplicatePageFault = 103;
+	public static final int NONE = -1;
+	public static final int TaskLive = 0;
+	public static final int TaskTerm = 1;
+	public static final int ThreadReady = 20;
+	public static final int ThreadRunning = 21;
+	public static final int ThreadKill = 22;
+	public static final int ThreadWaiting = 30;
+	public static final int MemoryRead = 21;
+	public static final int MemoryWrite = 22;
+	public static final int MemoryLock = 23;
+	public static final int FileWrite = 33;
+	public static final int FileRead = 34;
+	public static final int SwapDeviceID = 0;
+	public static final int PageFault = 0;
+	public static final int DiskInterrupt = 1;
+	public static final int TimerInterrupt = 2;
+}
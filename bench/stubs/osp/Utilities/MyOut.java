@@ -0,0 +1,22 @@
+package osp.Utilities;
+
+/**
+Stand-in for the OSP MyOut: prints to standard output.
+*/
+public class MyOut
+{
+	public static void print(Object source, String message)
+	{
+		System.out.println(message);
+	}
+
+	public static void warning(Object source, String message)
+	{
+		System.out.println("Warning: " + message);
+	}
+
+	public static void error(Object source, String message)
+	{
+		System.out.println("Error: " + message);
+	}
+}
@@ -0,0 +1,55 @@
+package osp.Memory;
+
+/**
+Purpose: The aging (NFU) policy, an approximation of LRU. Each frame keeps an
+		 8-bit age. Every time a frame is needed, all ages are shifted right and
+		 the reference bit is shifted in at the top, then the reference bits are
+		 cleared. The evictable frame with the smallest age is chosen, preferring
+		 a clean frame when two ages are equal.
+
+@OSPProject Memory
+*/
+class AgingPolicy extends ReplacementPolicy
+{
+	private int[] age;
+
+	String getName()
+	{
+		return "Aging";
+	}
+
+	FrameTableEntry findVictim()
+	{
+		int size = MMU.getFrameTableSize();
+		if (age == null)
+			age = new int[size];
+
+		FrameTableEntry victim = null;
+		for (int i = 0; i < size; i++) {
+			FrameTableEntry frame = MMU.getFrame(i);
+			framesScanned++;
+			age[i] >>>= 1;
+			if (frame.isReferenced()) {
+				age[i] |= 0x80;
+				frame.markReferenced(false);
+			}
+			if (PageFaultHandler.isFree(frame))
+				PageFaultHandler.releaseFrame(frame);
+			if (!isEvictable(frame))
+				continue;
+			if (victim == null || age[i] < age[victim.getID()]
+					|| (age[i] == age[victim.getID()] && victim.isDirty() && !frame.isDirty()))
+				victim = frame;
+		}
+		if (PageFaultHandler.numFreeFrames() > 0)
+			return PageFaultHandler.getFreeFrame();
+		return victim;
+	}
+
+	void frameLoaded(FrameTableEntry frame, PageTableEntry page)
+	{
+//		A new page starts as recently used.
+		if (age != null)
+			age[frame.getID()] = 0x80;
+	}
+}
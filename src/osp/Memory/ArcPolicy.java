@@ -0,0 +1,146 @@
+package osp.Memory;
+
+import java.util.*;
+
+/**
+Purpose: Adaptive Replacement (ARC) in its clock form, CAR (Bansal and Modha,
+		 2004), which works from reference bits instead of a hook on every
+		 memory reference. Resident pages live on two clocks: T1 for pages seen
+		 once recently and T2 for pages seen at least twice. Pages evicted from
+		 them are remembered (without a frame) on the history lists B1 and B2.
+		 A fault on a page in B1 makes T1 bigger, a fault on a page in B2 makes
+		 T2 bigger; "target" is the size T1 is aiming for.
+
+@OSPProject Memory
+*/
+class ArcPolicy extends ReplacementPolicy
+{
+	private FrameRing t1;
+	private FrameRing t2;
+	private final LinkedHashSet<PageTableEntry> b1 = new LinkedHashSet<PageTableEntry>();
+	private final LinkedHashSet<PageTableEntry> b2 = new LinkedHashSet<PageTableEntry>();
+	private int target;
+	private int capacity;
+
+	String getName()
+	{
+		return "ARC";
+	}
+
+	private void initRings()
+	{
+		if (t1 == null) {
+			capacity = MMU.getFrameTableSize();
+			t1 = new FrameRing(capacity);
+			t2 = new FrameRing(capacity);
+		}
+	}
+
+	FrameTableEntry findVictim()
+	{
+		initRings();
+//		Frames that are locked or reserved are moved past; bound the number of
+//		moves so that a table full of pinned frames cannot loop forever. A ring
+//		whose frames have all been moved past in a row is left for the other
+//		one, so that a victim is looked for in both before giving up.
+		int limit = 3 * (t1.size() + t2.size()) + 2;
+		int pinnedT1 = 0;
+		int pinnedT2 = 0;
+		for (int counter = 0; counter < limit; counter++) {
+			boolean fromT1 = t1.size() >= Math.max(1, target) || t2.size() == 0;
+			boolean t1Pinned = pinnedT1 >= t1.size();
+			boolean t2Pinned = pinnedT2 >= t2.size();
+			if (t1Pinned && t2Pinned)
+				break;
+			if (fromT1 && t1Pinned)
+				fromT1 = false;
+			else if (!fromT1 && t2Pinned)
+				fromT1 = true;
+			FrameRing ring = fromT1 ? t1 : t2;
+			int id = ring.hand();
+			if (id < 0)
+				break;
+			FrameTableEntry frame = MMU.getFrame(id);
+			framesScanned++;
+
+			if (frame.getPage() == null) {
+//				Emptied by OSP itself (e.g., a killed thread's reserved frame).
+				frameReleased(frame);
+				PageFaultHandler.releaseFrame(frame);
+				continue;
+			}
+			if (!isEvictable(frame)) {
+				ring.advance();
+				if (fromT1)
+					pinnedT1++;
+				else
+					pinnedT2++;
+				continue;
+			}
+			if (fromT1)
+				pinnedT1 = 0;
+			else
+				pinnedT2 = 0;
+			if (frame.isReferenced()) {
+				frame.markReferenced(false);
+				if (fromT1) {
+//					Used again while on T1: it is now a frequent page.
+					t1.remove(id);
+					t2.add(id);
+				} else {
+					t2.advance();
+				}
+				continue;
+			}
+			return frame;
+		}
+		return PageFaultHandler.getFreeFrame();
+	}
+
+	void frameLoaded(FrameTableEntry frame, PageTableEntry page)
+	{
+		initRings();
+		int id = frame.getID();
+		if (b1.remove(page)) {
+			target = Math.min(target + Math.max(1, b2.size() / Math.max(1, b1.size())), capacity);
+			t2.add(id);
+		} else if (b2.remove(page)) {
+			target = Math.max(target - Math.max(1, b1.size() / Math.max(1, b2.size())), 0);
+			t2.add(id);
+		} else {
+//			A page with no history: keep the directory within 2c pages.
+			if (t1.size() + b1.size() >= capacity && !b1.isEmpty())
+				removeOldest(b1);
+			else if (t1.size() + t2.size() + b1.size() + b2.size() >= 2 * capacity && !b2.isEmpty())
+				removeOldest(b2);
+			t1.add(id);
+		}
+	}
+
+	void frameEvicted(FrameTableEntry frame, PageTableEntry page)
+	{
+		initRings();
+		int id = frame.getID();
+		if (t1.contains(id)) {
+			t1.remove(id);
+			b1.add(page);
+		} else if (t2.contains(id)) {
+			t2.remove(id);
+			b2.add(page);
+		}
+	}
+
+	void frameReleased(FrameTableEntry frame)
+	{
+		initRings();
+		t1.remove(frame.getID());
+		t2.remove(frame.getID());
+	}
+
+	private static void removeOldest(LinkedHashSet<PageTableEntry> history)
+	{
+		Iterator<PageTableEntry> oldest = history.iterator();
+		oldest.next();
+		oldest.remove();
+	}
+}
@@ -0,0 +1,53 @@
+package osp.Memory;
+
+/**
+Purpose: The plain Clock policy. The hand sweeps the frame table, clearing the
+		 reference bit of referenced frames, and stops at the first frame that
+		 is not referenced, not locked and not reserved. Unlike Second Chance,
+		 nothing is freed ahead of time and dirty frames are not passed over.
+
+@OSPProject Memory
+*/
+class ClockPolicy extends ReplacementPolicy
+{
+	private int hand;
+
+	String getName()
+	{
+		return "Clock";
+	}
+
+	FrameTableEntry findVictim()
+	{
+		int size = MMU.getFrameTableSize();
+//		Two full turns are enough: the first one clears every reference bit.
+		for (int counter = 0; counter < 2 * size; counter++) {
+//			Step over a run of locked frames at once.
+			if (FrameBits.pinned > 0) {
+				int run = FrameBits.pinnedRun(hand, 2 * size - counter);
+				if (run > 0) {
+					hand = (hand + run) % size;
+					counter += run - 1;
+					pinnedSkipped += run;
+					continue;
+				}
+			}
+			FrameTableEntry frame = MMU.getFrame(hand);
+			hand = (hand + 1) % size;
+			framesScanned++;
+
+			if (PageFaultHandler.isFree(frame)) {
+				PageFaultHandler.releaseFrame(frame);
+				return PageFaultHandler.getFreeFrame();
+			}
+			if (!isEvictable(frame))
+				continue;
+			if (frame.isReferenced()) {
+				frame.markReferenced(false);
+				continue;
+			}
+			return frame;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,159 @@
+package osp.Memory;
+
+import java.util.*;
+
+/**
+Purpose: CLOCK-Pro (Jiang, Chen and Zhang, 2005), with the hot and cold pages
+		 kept on two clocks. New pages start cold and in their test period. A
+		 cold page referenced during its test period becomes hot; a cold page
+		 evicted during its test period is remembered as a non-resident page,
+		 and a fault on it means the cold share of memory was too small, so the
+		 cold target grows. Non-resident pages that expire without a refault
+		 shrink it. The hot hand demotes unreferenced hot pages when there are
+		 more hot pages than memory minus the cold target.
+
+@OSPProject Memory
+*/
+class ClockProPolicy extends ReplacementPolicy
+{
+	private FrameRing hot;
+	private FrameRing cold;
+	private boolean[] test;
+	private final LinkedHashSet<PageTableEntry> nonResident = new LinkedHashSet<PageTableEntry>();
+	private int coldTarget = 1;
+	private int capacity;
+
+	String getName()
+	{
+		return "ClockPro";
+	}
+
+	private void initRings()
+	{
+		if (hot == null) {
+			capacity = MMU.getFrameTableSize();
+			hot = new FrameRing(capacity);
+			cold = new FrameRing(capacity);
+			test = new boolean[capacity];
+		}
+	}
+
+	FrameTableEntry findVictim()
+	{
+		initRings();
+//		A cold clock whose frames have all been moved past in a row (locked or
+//		reserved) gets a page demoted from the hot clock, and is swept again.
+		int limit = 3 * (hot.size() + cold.size()) + 2;
+		int pinned = 0;
+		for (int counter = 0; counter < limit; counter++) {
+			if (pinned >= cold.size()) {
+				if (!runHotHand())
+					break;
+				pinned = 0;
+			}
+			int id = cold.hand();
+			if (id < 0)
+				break;
+			FrameTableEntry frame = MMU.getFrame(id);
+			framesScanned++;
+
+			if (frame.getPage() == null) {
+//				Emptied by OSP itself (e.g., a killed thread's reserved frame).
+				frameReleased(frame);
+				PageFaultHandler.releaseFrame(frame);
+				continue;
+			}
+			if (!isEvictable(frame)) {
+				cold.advance();
+				pinned++;
+				continue;
+			}
+			pinned = 0;
+			if (frame.isReferenced()) {
+				frame.markReferenced(false);
+				if (test[id]) {
+//					Re-used within its test period: promote it.
+					cold.remove(id);
+					test[id] = false;
+					hot.add(id);
+					if (hot.size() > capacity - coldTarget)
+						runHotHand();
+				} else {
+					test[id] = true;
+					cold.advance();
+				}
+				continue;
+			}
+			return frame;
+		}
+		return PageFaultHandler.getFreeFrame();
+	}
+
+	/**
+	Purpose: Moves the hot hand until one hot page has been demoted to cold.
+
+	Output:
+		true if a page was demoted.
+	*/
+	private boolean runHotHand()
+	{
+		for (int counter = 0; counter < 2 * hot.size(); counter++) {
+			int id = hot.hand();
+			FrameTableEntry frame = MMU.getFrame(id);
+			framesScanned++;
+			if (frame.isReferenced() || !isEvictable(frame)) {
+				frame.markReferenced(false);
+				hot.advance();
+				continue;
+			}
+			hot.remove(id);
+			test[id] = false;
+			cold.add(id);
+			return true;
+		}
+		return false;
+	}
+
+	void frameLoaded(FrameTableEntry frame, PageTableEntry page)
+	{
+		initRings();
+		int id = frame.getID();
+		if (nonResident.remove(page)) {
+//			Refault during the test period: the cold share should be bigger.
+			coldTarget = Math.min(coldTarget + 1, Math.max(1, capacity - 1));
+			hot.add(id);
+			test[id] = false;
+			if (hot.size() > capacity - coldTarget)
+				runHotHand();
+		} else {
+			cold.add(id);
+			test[id] = true;
+		}
+	}
+
+	void frameEvicted(FrameTableEntry frame, PageTableEntry page)
+	{
+		initRings();
+		int id = frame.getID();
+		if (cold.contains(id) && test[id]) {
+			nonResident.add(page);
+			if (nonResident.size() > capacity) {
+//				The oldest test period ends without a refault.
+				Iterator<PageTableEntry> oldest = nonResident.iterator();
+				oldest.next();
+				oldest.remove();
+				coldTarget = Math.max(coldTarget - 1, 1);
+			}
+		}
+		frameReleased(frame);
+	}
+
+	void frameReleased(FrameTableEntry frame)
+	{
+		initRings();
+		int id = frame.getID();
+		hot.remove(id);
+		cold.remove(id);
+		test[id] = false;
+	}
+}
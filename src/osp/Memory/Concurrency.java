@@ -0,0 +1,165 @@
+package osp.Memory;
+
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.ReentrantLock;
+import osp.Tasks.TaskCB;
+import osp.Threads.ThreadCB;
+import osp.Utilities.GlobalVariables;
+
+/**
+Purpose: Concurrent mode, in which the references of different tasks are
+		 handled in parallel by several Java threads instead of one at a time
+		 by the OSP dispatcher. Turned on with "ConcurrentMemory 1" in the
+		 [Memory] section of Misc/params.osp; OSP itself only ever runs one
+		 thread, so the mode is there for the drivers in bench/.
+
+		 A reference to a valid page (the common case) takes only the lock of
+		 the stripe of its frame. Each stripe covers whole 64-frame words of
+		 FrameBits, so the frame's flags and their bits change together under
+		 it, and a reference can check that the page is still in the frame
+		 and the frame is not reserved before marking it. Everything else
+		 (page faults, read-ahead, write-back, locking pages for I/O, task
+		 teardown and the daemons) runs under the one fault lock: the free
+		 pool, the replacement policies and the rest of the module's state
+		 are made for one thread at a time. Such code reserves a frame before
+		 it takes the page out or writes it, which sends references to the
+		 frame to the fault lock until it is done.
+
+		 Reservations are also kept here, as the ID (plus one) of the task
+		 holding each frame, set and cleared with compare-and-set, so that a
+		 frame handed to two tasks at once is caught (see conflicts).
+
+		 The shared TLB and the prefetcher are consulted on every reference,
+		 so concurrent mode turns them off. A task's per-task counters are
+		 updated without locking: the tasks, not their threads, are what runs
+		 in parallel.
+
+@OSPProject Memory
+*/
+class Concurrency
+{
+	static boolean enabled;
+	static ReentrantLock faultLock = new ReentrantLock();
+	private static Object[] stripes = new Object[0];
+	private static AtomicIntegerArray reservations = new AtomicIntegerArray(0);
+
+//	Reads and writes that found their page valid (the others are counted in
+//	MemoryMetrics.total under the fault lock), references that had to take
+//	the fault lock, and frames reserved for a task while another task held them.
+	static LongAdder reads = new LongAdder();
+	static LongAdder writes = new LongAdder();
+	static LongAdder slowReferences = new LongAdder();
+	static AtomicLong conflicts = new AtomicLong();
+
+	static void init(int frames)
+	{
+		enabled = MemoryParameters.getBoolean("ConcurrentMemory", false);
+		int words = (frames + 63) >>> 6;
+		int count = Integer.highestOneBit(Math.max(1, Math.min(words, MemoryParameters.getInt("LockStripes", 64))));
+		stripes = new Object[count];
+		for (int i = 0; i < count; i++)
+			stripes[i] = new Object();
+		reservations = new AtomicIntegerArray(frames);
+		faultLock = new ReentrantLock();
+		reads = new LongAdder();
+		writes = new LongAdder();
+		slowReferences = new LongAdder();
+		conflicts = new AtomicLong();
+	}
+
+	/**
+	Purpose: The lock guarding a frame, its FrameBits and its page's validity.
+	*/
+	static Object stripe(int frameID)
+	{
+		return stripes[(frameID >>> 6) & (stripes.length - 1)];
+	}
+
+	/** Takes the fault lock, in concurrent mode. */
+	static void lock()
+	{
+		if (enabled)
+			faultLock.lock();
+	}
+
+	static void unlock()
+	{
+		if (enabled)
+			faultLock.unlock();
+	}
+
+	/**
+	Purpose: Claims a frame for a task.
+
+	Output:
+		false if another task holds the frame.
+	*/
+	static boolean reserve(int frameID, TaskCB task)
+	{
+		int mine = task.getID() + 1;
+		int holder = reservations.get(frameID);
+		if (holder == mine)
+			return true;
+		if (reservations.compareAndSet(frameID, 0, mine))
+			return true;
+//		OSP may have unreserved the frame behind our back.
+		if (!MMU.getFrame(frameID).isReserved() && reservations.compareAndSet(frameID, holder, mine))
+			return true;
+		conflicts.incrementAndGet();
+		return false;
+	}
+
+	/** Lets go of a frame, if "task" holds it. */
+	static void unreserve(int frameID, TaskCB task)
+	{
+		reservations.compareAndSet(frameID, task.getID() + 1, 0);
+	}
+
+	/**
+	Purpose: MMU.do_refer in concurrent mode.
+	*/
+	static PageTableEntry refer(PageTable pageTable, int pageAddress, int referenceType, ThreadCB thread)
+	{
+		PageTableEntry page = pageTable.pages[pageAddress];
+		FrameTableEntry frame = page.getFrame();
+		boolean hit = false;
+		if (frame != null) {
+			synchronized (stripe(frame.getID())) {
+				if (page.isValid() && frame.getPage() == page && !frame.isReserved()) {
+					frame.markReferenced(true);
+					if (referenceType == GlobalVariables.MemoryWrite)
+						frame.markDirty(true);
+					hit = true;
+				}
+			}
+		}
+		if (hit) {
+			MemoryCounters byThread = MemoryMetrics.of(thread);
+			if (referenceType == GlobalVariables.MemoryWrite) {
+				writes.increment();
+				pageTable.counters.writes++;
+				byThread.writes++;
+			} else {
+				reads.increment();
+				pageTable.counters.reads++;
+				byThread.reads++;
+			}
+			return page;
+		}
+		slowReferences.increment();
+		faultLock.lock();
+		try {
+			MemoryMetrics.referenced(pageTable, thread, referenceType);
+			return MMU.refer(pageTable, pageAddress, referenceType, thread);
+		} finally {
+			faultLock.unlock();
+		}
+	}
+
+	static String report()
+	{
+		return "concurrent mode: " + stripes.length + " lock stripes, " + slowReferences.sum() + " of "
+			+ (reads.sum() + writes.sum() + slowReferences.sum()) + " references under the fault lock, "
+			+ conflicts.get() + " reservation conflicts";
+	}
+}
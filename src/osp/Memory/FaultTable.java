@@ -0,0 +1,109 @@
+package osp.Memory;
+
+import java.util.*;
+import osp.IFLModules.*;
+import osp.Threads.*;
+
+/**
+Purpose: The page faults in flight, by page. The thread that faults on an
+		 invalid page first starts the swap-in (begin) and waits on an event
+		 of its own; a thread that refers to or locks the page meanwhile
+		 joins that fault (join) and waits on the page instead of starting
+		 another. When the swap-in is over, or fails, finish wakes the page's
+		 waiters and the faulting thread once each and gives the event back
+		 to a small pool, so that faults do not allocate events.
+
+@OSPProject Memory
+*/
+class FaultTable
+{
+	static final int POOL = 16;
+
+//	The event the faulting thread waits on, by page (null for read-ahead).
+	private static Map<PageTableEntry, SystemEvent> inFlight = new IdentityHashMap<PageTableEntry, SystemEvent>();
+	private static ArrayDeque<SystemEvent> pool = new ArrayDeque<SystemEvent>();
+
+//	Faults started, references and locks that joined one, faults that failed,
+//	and events taken from the pool instead of allocated.
+	static long started;
+	static long joined;
+	static long failed;
+	static long reused;
+
+	static void init()
+	{
+		inFlight = new IdentityHashMap<PageTableEntry, SystemEvent>();
+		pool = new ArrayDeque<SystemEvent>();
+		started = 0;
+		joined = 0;
+		failed = 0;
+		reused = 0;
+	}
+
+	/**
+	Purpose: Starts a fault on "page" by "thread", which becomes the page's
+			 validating thread.
+
+	Inputs:
+		- suspend	whether the thread waits for the fault on its event
+					(page faults) or goes on (read-ahead)
+	*/
+	static void begin(PageTableEntry page, ThreadCB thread, boolean suspend)
+	{
+		SystemEvent event = null;
+		if (suspend) {
+			event = pool.poll();
+			if (event == null)
+				event = new SystemEvent("PageFaultHappend");
+			else
+				reused++;
+			thread.suspend(event);
+		}
+		page.setValidatingThread(thread);
+		inFlight.put(page, event);
+		started++;
+	}
+
+	/**
+	Purpose: Makes "thread" wait for the fault in flight on "page".
+	*/
+	static void join(PageTableEntry page, ThreadCB thread)
+	{
+		joined++;
+		thread.suspend(page);
+	}
+
+	/**
+	Purpose: Ends the fault on "page": the page has no validating thread any
+			 more, and the threads that joined the fault and the one that
+			 started it are woken, once each.
+
+	Inputs:
+		- loaded	whether the page was made valid
+	*/
+	static void finish(PageTableEntry page, boolean loaded)
+	{
+		SystemEvent event = inFlight.remove(page);
+		page.setValidatingThread(null);
+		if (!loaded)
+			failed++;
+		page.notifyThreads();
+		if (event == null)
+			return;
+		event.notifyThreads();
+		if (pool.size() < POOL && event.getNumberOfThreadsWaiting() == 0)
+			pool.push(event);
+	}
+
+	/** The number of faults in flight. */
+	static int size()
+	{
+		return inFlight.size();
+	}
+
+	static String report()
+	{
+		return "faults in flight: " + started + " started, " + joined + " joined, " + failed + " failed, "
+			+ reused + " events reused";
+	}
+}
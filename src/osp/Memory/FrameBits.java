@@ -0,0 +1,127 @@
+package osp.Memory;
+
+/**
+Purpose: A struct-of-arrays shadow of the frame table, for scans that would
+		 otherwise call isReferenced(), isDirty(), isReserved(), getLockCount()
+		 and getPage() on every FrameTableEntry. Bit i of each bitset is frame
+		 i; 64 frames are tested with one long.
+
+		 The module changes frame state through the FrameTableEntry methods
+		 markReferenced, markDirty, markReserved, markUnreserved, addLock and
+		 removeLock, which update both the frame and these arrays; "free"
+		 follows the free-frame pool. OSP changes frames behind the module's
+		 back now and then (e.g., when it kills a thread), so a scan treats
+		 the bits as a hint: it checks a frame before acting on it, and
+		 resyncs a frame or the whole table when the hint was wrong.
+
+@OSPProject Memory
+*/
+class FrameBits
+{
+	static long[] referenced;
+	static long[] dirty;
+	static long[] reserved;
+	static long[] locked;
+	static long[] free;
+	static int[] lockCount;
+//	The number of frames locked (pinned) by the bits.
+	static int pinned;
+
+	static long resyncs;
+
+	static void init(int frames)
+	{
+		int words = (frames + 63) >>> 6;
+		referenced = new long[words];
+		dirty = new long[words];
+		reserved = new long[words];
+		locked = new long[words];
+		free = new long[words];
+		lockCount = new int[frames];
+		pinned = 0;
+		resyncs = 0;
+	}
+
+	static void set(long[] bits, int frame, boolean on)
+	{
+		if (on)
+			bits[frame >>> 6] |= 1L << frame;
+		else
+			bits[frame >>> 6] &= ~(1L << frame);
+	}
+
+	static boolean get(long[] bits, int frame)
+	{
+		return (bits[frame >>> 6] & (1L << frame)) != 0;
+	}
+
+	/**
+	Purpose: Records the lock count of a frame, and whether it is pinned.
+	*/
+	static void setLockCount(int frame, int count)
+	{
+		boolean was = get(locked, frame);
+		lockCount[frame] = count;
+		set(locked, frame, count > 0);
+		if (was != count > 0)
+			pinned += count > 0 ? 1 : -1;
+	}
+
+	/**
+	Purpose: The number of consecutive frames from "frame" on that are
+			 pinned by the bits, up to "limit" and the end of the table, so
+			 that a sweep can step over them at once.
+	*/
+	static int pinnedRun(int frame, int limit)
+	{
+		limit = Math.min(limit, lockCount.length - frame);
+		int run = 0;
+		while (run < limit) {
+			int id = frame + run;
+			int offset = id & 63;
+			// Locked frames are the zeros of ~locked; the bits shifted in past
+			// the end of the word are zeros too, hence the cap.
+			int n = Math.min(Long.numberOfTrailingZeros(~locked[id >>> 6] >>> offset), 64 - offset);
+			run += n;
+			if (n < 64 - offset)
+				break;
+		}
+		return Math.min(run, limit);
+	}
+
+	/**
+	Purpose: The frames of word "word" that hold a page nobody has locked or
+			 reserved, by the bits.
+	*/
+	static long evictable(int word)
+	{
+		return ~free[word] & ~reserved[word] & ~locked[word];
+	}
+
+	/**
+	Purpose: Copies the state of a frame into the bits.
+	*/
+	static void resync(FrameTableEntry frame)
+	{
+		int id = frame.getID();
+		set(referenced, id, frame.isReferenced());
+		set(dirty, id, frame.isDirty());
+		set(reserved, id, frame.isReserved());
+		setLockCount(id, frame.getLockCount());
+		set(free, id, MMU.freeFrames.contains(id));
+		resyncs++;
+	}
+
+	/**
+	Purpose: Copies the state of every frame into the bits, and gives frames
+			 that OSP emptied back to the free-frame pool.
+	*/
+	static void resyncAll()
+	{
+		for (int i = 0; i < MMU.getFrameTableSize(); i++) {
+			FrameTableEntry frame = MMU.getFrame(i);
+			PageFaultHandler.releaseFrame(frame);
+			resync(frame);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package osp.Memory;
+
+/**
+Purpose: A circular list of frame IDs with a clock hand, used by the policies
+		 that keep frames on their own clocks (ARC and CLOCK-Pro). The links are
+		 kept in int arrays indexed by frame ID, so adding a frame, removing any
+		 frame and moving the hand are all O(1).
+
+@OSPProject Memory
+*/
+class FrameRing
+{
+	private final int[] next;
+	private final int[] prev;
+	private int hand = -1;
+	private int size;
+
+	FrameRing(int frames)
+	{
+		next = new int[frames];
+		prev = new int[frames];
+		for (int i = 0; i < frames; i++)
+			next[i] = -1;
+	}
+
+	boolean contains(int frameID)
+	{
+		return next[frameID] >= 0;
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	Purpose: The frame under the hand, or -1 if the ring is empty.
+	*/
+	int hand()
+	{
+		return hand;
+	}
+
+	void advance()
+	{
+		if (hand >= 0)
+			hand = next[hand];
+	}
+
+	/**
+	Purpose: Adds a frame just behind the hand, i.e., as the frame the hand
+			 will reach last.
+	*/
+	void add(int frameID)
+	{
+		if (contains(frameID))
+			return;
+		if (hand < 0) {
+			next[frameID] = frameID;
+			prev[frameID] = frameID;
+			hand = frameID;
+		} else {
+			int tail = prev[hand];
+			next[tail] = frameID;
+			prev[frameID] = tail;
+			next[frameID] = hand;
+			prev[hand] = frameID;
+		}
+		size++;
+	}
+
+	/**
+	Purpose: Removes a frame. If the hand is on it, the hand moves to the next one.
+	*/
+	void remove(int frameID)
+	{
+		if (!contains(frameID))
+			return;
+		if (--size == 0) {
+			hand = -1;
+		} else {
+			next[prev[frameID]] = next[frameID];
+			prev[next[frameID]] = prev[frameID];
+			if (hand == frameID)
+				hand = next[frameID];
+		}
+		next[frameID] = -1;
+	}
+}
@@ -1,14 +1,15 @@
 package osp.Memory;
 
 import osp.IFLModules.IflFrameTableEntry;
+import osp.Tasks.TaskCB;
 
 public class FrameTableEntry extends IflFrameTableEntry
 {
-    /** 
-    Purpose: Containing information about a specific page frame of memory. 
-    			  
+    /**
+    Purpose: Containing information about a specific page frame of memory.
+
    @OSPProject Memory
-   
+
    Authors: Abdulaziz Hasan 1555528, Mohammed Shukri 1647376
    Date of the Last modification: 4/4/2020
 */
@@ -19,7 +20,108 @@ public class FrameTableEntry extends IflFrameTableEntry
     	super(frameID);
     }
 
+    /*
+    The setters of IflFrameTableEntry are final, so the module changes the
+    state of a frame through the methods below, which also keep the
+    FrameBits shadow of the frame table up to date. In concurrent mode they
+    hold the frame's stripe lock (see Concurrency), and reserving a frame
+    also claims it with compare-and-set.
+    */
 
- 
-}
+    void markReferenced(boolean flag)
+    {
+    	if (Concurrency.enabled) {
+    		synchronized (Concurrency.stripe(getID())) {
+    			setReferenced(flag);
+    			FrameBits.set(FrameBits.referenced, getID(), flag);
+    		}
+    		return;
+    	}
+    	setReferenced(flag);
+    	FrameBits.set(FrameBits.referenced, getID(), flag);
+    }
+
+    void markDirty(boolean flag)
+    {
+    	// Setting the dirty bit is a write to the page.
+    	PageTableEntry page = flag ? getPage() : null;
+    	if (Concurrency.enabled) {
+    		synchronized (Concurrency.stripe(getID())) {
+    			if (page != null)
+    				page.writes++;
+    			setDirty(flag);
+    			FrameBits.set(FrameBits.dirty, getID(), flag);
+    		}
+    		return;
+    	}
+    	if (page != null)
+    		page.writes++;
+    	setDirty(flag);
+    	FrameBits.set(FrameBits.dirty, getID(), flag);
+    }
+
+    /*
+    Returns false, leaving the frame alone, if another task reserved it first
+    (concurrent mode only); the caller must then use another frame.
+    */
+    boolean markReserved(TaskCB task)
+    {
+    	if (Concurrency.enabled) {
+    		if (!Concurrency.reserve(getID(), task))
+    			return false;
+    		synchronized (Concurrency.stripe(getID())) {
+    			setReserved(task);
+    			FrameBits.set(FrameBits.reserved, getID(), true);
+    		}
+    		return true;
+    	}
+    	setReserved(task);
+    	FrameBits.set(FrameBits.reserved, getID(), true);
+    	return true;
+    }
 
+    void markUnreserved(TaskCB task)
+    {
+    	if (Concurrency.enabled) {
+    		synchronized (Concurrency.stripe(getID())) {
+    			setUnreserved(task);
+    			FrameBits.set(FrameBits.reserved, getID(), isReserved());
+    		}
+    		Concurrency.unreserve(getID(), task);
+    		return;
+    	}
+    	setUnreserved(task);
+    	FrameBits.set(FrameBits.reserved, getID(), isReserved());
+    }
+
+    void addLock()
+    {
+    	if (Concurrency.enabled) {
+    		synchronized (Concurrency.stripe(getID())) {
+    			lockBits(1);
+    		}
+    		return;
+    	}
+    	lockBits(1);
+    }
+
+    void removeLock()
+    {
+    	if (Concurrency.enabled) {
+    		synchronized (Concurrency.stripe(getID())) {
+    			lockBits(-1);
+    		}
+    		return;
+    	}
+    	lockBits(-1);
+    }
+
+    private void lockBits(int change)
+    {
+    	if (change > 0)
+    		incrementLockCount();
+    	else
+    		decrementLockCount();
+    	FrameBits.setLockCount(getID(), getLockCount());
+    }
+}
@@ -0,0 +1,135 @@
+package osp.Memory;
+
+/**
+Purpose: A set of small non-negative integers (frame IDs or page numbers)
+		 below a fixed bound. It is an indexed stack: "stack" holds the members
+		 and "position" holds where each number sits in the stack, so adding,
+		 removing, taking and counting are all O(1), and the members can be
+		 listed without looking at the non-members.
+
+		 MMU.freeFrames uses it for the free-frame pool, and every PageTable
+		 uses it for the pages of its task that are in memory. A task usually
+		 touches a small part of its address space, so "position" is a radix
+		 table: one slot per CHUNK numbers, pointing to a chunk that is only
+		 allocated when one of its numbers is added, and the stack grows with
+		 the set. A new set costs next to nothing whatever the bound.
+
+@OSPProject Memory
+*/
+class IndexSet
+{
+	private static final int CHUNK_BITS = 10;
+	private static final int CHUNK = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK - 1;
+
+	private final int bound;
+	private int[] stack;
+//	position[n >> CHUNK_BITS][n & CHUNK_MASK] is n's place in the stack plus one,
+//	so that 0 (and a missing chunk) means "not a member".
+	private final int[][] position;
+	private int size;
+	private long chunkSlots;
+
+	IndexSet(int bound)
+	{
+		this.bound = bound;
+		stack = new int[Math.min(bound, 16)];
+		position = new int[(bound + CHUNK - 1) >> CHUNK_BITS][];
+		size = 0;
+	}
+
+	/**
+	Purpose: Adds a number to the set. Adding a member has no effect.
+	*/
+	void add(int number)
+	{
+		int[] chunk = position[number >> CHUNK_BITS];
+		if (chunk == null) {
+//			The last chunk only covers the numbers up to the bound.
+			int base = number & ~CHUNK_MASK;
+			chunk = new int[Math.min(CHUNK, bound - base)];
+			position[number >> CHUNK_BITS] = chunk;
+			chunkSlots += chunk.length;
+		} else if (chunk[number & CHUNK_MASK] != 0) {
+			return;
+		}
+		if (size == stack.length) {
+			int[] larger = new int[Math.min(bound, 2 * stack.length)];
+			System.arraycopy(stack, 0, larger, 0, size);
+			stack = larger;
+		}
+		stack[size++] = number;
+		chunk[number & CHUNK_MASK] = size;
+	}
+
+	/**
+	Purpose: Removes a number from the set, if it is there.
+	*/
+	void remove(int number)
+	{
+		int[] chunk = position[number >> CHUNK_BITS];
+		if (chunk == null || chunk[number & CHUNK_MASK] == 0)
+			return;
+		int at = chunk[number & CHUNK_MASK] - 1;
+		chunk[number & CHUNK_MASK] = 0;
+//		Move the last member of the stack into the hole.
+		int last = stack[--size];
+		if (last != number) {
+			stack[at] = last;
+			position[last >> CHUNK_BITS][last & CHUNK_MASK] = at + 1;
+		}
+	}
+
+	/**
+	Purpose: Takes a member out of the set.
+
+	Output:
+		The member, or -1 if the set is empty.
+	*/
+	int take()
+	{
+		if (size == 0)
+			return -1;
+		int number = stack[--size];
+		position[number >> CHUNK_BITS][number & CHUNK_MASK] = 0;
+		return number;
+	}
+
+	/**
+	Purpose: The i-th member, for 0 <= i < size(). The order changes when
+			 members are added or removed.
+	*/
+	int get(int i)
+	{
+		return stack[i];
+	}
+
+	boolean contains(int number)
+	{
+		int[] chunk = position[number >> CHUNK_BITS];
+		return chunk != null && chunk[number & CHUNK_MASK] != 0;
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	Purpose: Removes every member in O(size()).
+	*/
+	void clear()
+	{
+		for (int i = 0; i < size; i++)
+			position[stack[i] >> CHUNK_BITS][stack[i] & CHUNK_MASK] = 0;
+		size = 0;
+	}
+
+	/**
+	Purpose: Roughly how many bytes the set takes (array payloads only).
+	*/
+	long bytes()
+	{
+		return 4L * stack.length + 4L * position.length + 4L * chunkSlots;
+	}
+}
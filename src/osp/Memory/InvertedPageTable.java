@@ -0,0 +1,170 @@
+package osp.Memory;
+
+/**
+Purpose: An inverted page table: one entry per frame, saying which page of
+		 which task the frame holds, and a hash on (page table, page number)
+		 to find the entry of a page. Its size depends on the frame table
+		 only, not on the number of tasks or their address spaces.
+
+		 MMU.do_refer looks pages up here when the TLB misses, so a resident
+		 page is found without touching the task's page table; a page that
+		 is not found is not resident and is taken from the page table to be
+		 faulted in. PageTable.pageMapped and pageUnmapped keep it up to date.
+		 The entries of a task are also chained together, so that tearing a
+		 task down only walks its own entries.
+
+		 Chosen with "PageTableType Inverted" in the [Memory] section of
+		 Misc/params.osp (the default is Flat).
+
+@OSPProject Memory
+*/
+class InvertedPageTable
+{
+	private final int[] buckets;
+	private final int mask;
+
+//	Per entry (= frame ID): owner, page number, next entry in the same
+//	bucket, and the neighbours in the owner's chain. -1 ends a chain.
+	private final PageTable[] owner;
+	private final int[] pageNumber;
+	private final int[] bucketNext;
+	private final int[] taskNext;
+	private final int[] taskPrev;
+
+	long lookups;
+	long probes;
+
+	InvertedPageTable(int frames)
+	{
+		int size = Integer.highestOneBit(Math.max(1, 2 * frames - 1)) << 1;
+		buckets = new int[size];
+		mask = size - 1;
+		for (int i = 0; i < size; i++)
+			buckets[i] = -1;
+		owner = new PageTable[frames];
+		pageNumber = new int[frames];
+		bucketNext = new int[frames];
+		taskNext = new int[frames];
+		taskPrev = new int[frames];
+	}
+
+	private int bucket(PageTable pageTable, int page)
+	{
+		int h = (pageTable.tableNumber * 0x9E3779B1) ^ (page * 0x85EBCA6B);
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	Purpose: Finds the page of a task held by a frame.
+
+	Output:
+		The page if it is resident and valid, otherwise null.
+	*/
+	PageTableEntry lookup(PageTable pageTable, int page)
+	{
+		lookups++;
+		for (int e = buckets[bucket(pageTable, page)]; e >= 0; e = bucketNext[e]) {
+			probes++;
+			if (owner[e] == pageTable && pageNumber[e] == page) {
+				PageTableEntry entry = MMU.getFrame(e).getPage();
+//				OSP may have emptied the frame behind our back.
+				if (entry == null || entry.getID() != page || !entry.isValid())
+					return null;
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	/**
+	Purpose: Records that "frame" now holds page "page" of a task.
+	*/
+	void insert(PageTable pageTable, int page, int frame)
+	{
+		if (owner[frame] != null)
+			remove(frame);
+		int b = bucket(pageTable, page);
+		owner[frame] = pageTable;
+		pageNumber[frame] = page;
+		bucketNext[frame] = buckets[b];
+		buckets[b] = frame;
+		taskPrev[frame] = -1;
+		taskNext[frame] = pageTable.invertedHead;
+		if (pageTable.invertedHead >= 0)
+			taskPrev[pageTable.invertedHead] = frame;
+		pageTable.invertedHead = frame;
+	}
+
+	/**
+	Purpose: Forgets the entry of a page, if it has one.
+	*/
+	void remove(PageTable pageTable, int page)
+	{
+		for (int e = buckets[bucket(pageTable, page)]; e >= 0; e = bucketNext[e]) {
+			if (owner[e] == pageTable && pageNumber[e] == page) {
+				remove(e);
+				return;
+			}
+		}
+	}
+
+	private void remove(int frame)
+	{
+		PageTable pageTable = owner[frame];
+		int b = bucket(pageTable, pageNumber[frame]);
+		if (buckets[b] == frame) {
+			buckets[b] = bucketNext[frame];
+		} else {
+			int e = buckets[b];
+			while (bucketNext[e] != frame)
+				e = bucketNext[e];
+			bucketNext[e] = bucketNext[frame];
+		}
+		if (taskPrev[frame] >= 0)
+			taskNext[taskPrev[frame]] = taskNext[frame];
+		else
+			pageTable.invertedHead = taskNext[frame];
+		if (taskNext[frame] >= 0)
+			taskPrev[taskNext[frame]] = taskPrev[frame];
+		owner[frame] = null;
+	}
+
+	/**
+	Purpose: The first entry (a frame ID) of a task's chain, or -1.
+	*/
+	int first(PageTable pageTable)
+	{
+		return pageTable.invertedHead;
+	}
+
+	/**
+	Purpose: The entry after "frame" in its task's chain, or -1.
+	*/
+	int next(int frame)
+	{
+		return taskNext[frame];
+	}
+
+	/**
+	Purpose: The page number held by the entry of "frame".
+	*/
+	int pageNumber(int frame)
+	{
+		return pageNumber[frame];
+	}
+
+	/**
+	Purpose: Drops every entry of a task.
+	*/
+	void removeAll(PageTable pageTable)
+	{
+		while (pageTable.invertedHead >= 0)
+			remove(pageTable.invertedHead);
+	}
+
+	public String toString()
+	{
+		return "inverted page table " + owner.length + " entries, " + buckets.length + " buckets: " + lookups
+			+ " lookups, " + String.format("%.2f", lookups == 0 ? 0.0 : (double) probes / lookups) + " probes per lookup";
+	}
+}
@@ -30,15 +30,122 @@ public class MMU extends IflMMU
         @OSPProject Memory
     */
 	public static int Cursor;
-	public static int wantFree;
+//	Free-frame watermarks: the page-out daemon wakes up below lowWater and
+//	frees frames until highWater are free; a page fault that finds the pool
+//	empty frees up to lowWater frames itself.
+	public static int lowWater;
+	public static int highWater;
+//	The frames that are currently free (no page, not reserved, not locked).
+	static IndexSet freeFrames;
+//	The page-replacement policy, chosen with the ReplacementPolicy key in params.osp.
+	static ReplacementPolicy policy;
+//	The software TLB, or null if TLBEntries is 0.
+	static TLB tlb;
+//	The inverted page table, or null for PageTableType Flat.
+	static InvertedPageTable invertedTable;
+//	Address translation: page number = (address >>> offsetBits) & pageMask.
+	static int offsetBits;
+	static int pageMask;
+//	Whether the report at the end is scheduled (drivers that print their
+//	own set it beforehand), and whether it is printed (MemoryReport, off by
+//	default; drivers can turn it on after init).
+	static boolean reportScheduled;
+	static boolean report;
 	
     public static void init()
     {
     	Cursor = 0;
-    	wantFree = 1;
+    	lowWater = Math.max(1, Math.min(MemoryParameters.getInt("FreeFramesLow", 2), getFrameTableSize() / 2));
+    	highWater = Math.max(lowWater, Math.min(MemoryParameters.getInt("FreeFramesHigh", 4), getFrameTableSize() / 2));
+    	PageFaultHandler.poolFaults = 0;
+    	PageFaultHandler.rangeFaults = 0;
+    	PageFaultHandler.rangePages = 0;
+    	PageOutDaemon.reset();
+    	WriteBackDaemon.init();
+    	Concurrency.init(getFrameTableSize());
+    	FaultTable.init();
+    	SwapCluster.init();
+    	SwapCache.init();
+    	Superpages.init();
+    	PageSharing.init();
+    	Prefetcher.init();
+    	WorkingSets.init();
+    	MemoryMetrics.init();
+    	ReferenceTrace.init();
+    	// A page is 2^(VirtualAddressBits-PageAddressBits) bytes, and there are 2^PageAddressBits pages.
+    	offsetBits = getVirtualAddressBits() - getPageAddressBits();
+    	pageMask = (1 << getPageAddressBits()) - 1;
+    	freeFrames = new IndexSet(MMU.getFrameTableSize());
+    	FrameBits.init(MMU.getFrameTableSize());
+    	policy = ReplacementPolicy.create(MemoryParameters.get("ReplacementPolicy", ReplacementPolicy.DEFAULT));
+    	policy.freeTarget = lowWater;
+    	report = MemoryParameters.getBoolean("MemoryReport", false);
+    	int tlbEntries = MemoryParameters.getInt("TLBEntries", 0);
+    	tlb = tlbEntries > 0 && !Concurrency.enabled ? new TLB(tlbEntries, MemoryParameters.getInt("TLBAssociativity", 4)) : null;
+    	invertedTable = MemoryParameters.get("PageTableType", "Flat").equalsIgnoreCase("Inverted")
+    		? new InvertedPageTable(getFrameTableSize()) : null;
     	
-    	for (int i=0; i<MMU.getFrameTableSize(); i++)
+    	for (int i=0; i<MMU.getFrameTableSize(); i++) {
     		setFrame(i, new FrameTableEntry(i));
+    		// Every frame starts out free.
+    		freeFrames.add(i);
+    		FrameBits.set(FrameBits.free, i, true);
+    	}
+
+    	if (MemoryParameters.getBoolean("PageOutDaemon", true))
+    		Daemon.create("PageOut", new PageOutDaemon(), MemoryParameters.getInt("PageOutInterval", 500));
+    	if (WriteBackDaemon.interval > 0)
+    		Daemon.create("WriteBack", new WriteBackDaemon(), WriteBackDaemon.interval);
+    	if (PageSharing.enabled && PageSharing.interval > 0)
+    		Daemon.create("Merge", new PageSharing(), PageSharing.interval);
+    	if (Prefetcher.enabled)
+    		Daemon.create("Prefetch", new Prefetcher(), MemoryParameters.getInt("PrefetchInterval", 20));
+
+    	// Close the reference trace, and print the module's figures, when the simulation ends.
+    	if (!reportScheduled) {
+    		reportScheduled = true;
+    		Runtime.getRuntime().addShutdownHook(new Thread() {
+    			public void run() {
+    				if (!report) {
+    					ReferenceTrace.close();
+    					return;
+    				}
+    				long faults = MemoryMetrics.total.faults;
+    				System.out.println("Memory: " + MemoryMetrics.totals().references() + " references, "
+    					+ faults + " page faults (" + PageFaultHandler.poolFaults
+    					+ " from the free pool, " + (faults - PageFaultHandler.poolFaults)
+    					+ " by direct reclaim), " + policy);
+    				System.out.println("Memory: " + MemoryMetrics.report());
+    				if (PageFaultHandler.rangeFaults > 0)
+    					System.out.println("Memory: range locks: " + PageFaultHandler.rangeFaults + " page faults read "
+    						+ PageFaultHandler.rangePages + " pages");
+    				System.out.println("Memory: " + PageOutDaemon.report());
+    				if (WriteBackDaemon.interval > 0)
+    					System.out.println("Memory: " + WriteBackDaemon.report());
+    				System.out.println("Memory: " + SwapCluster.report());
+    				if (SwapCache.enabled)
+    					System.out.println("Memory: " + SwapCache.report());
+    				if (Superpages.enabled)
+    					System.out.println("Memory: " + Superpages.report());
+    				if (PageSharing.enabled)
+    					System.out.println("Memory: " + PageSharing.report());
+    				System.out.println("Memory: " + Prefetcher.report());
+    				System.out.println("Memory: " + WorkingSets.report());
+    				if (tlb != null)
+    					System.out.println("Memory: " + tlb);
+    				if (invertedTable != null)
+    					System.out.println("Memory: " + invertedTable);
+    				System.out.println("Memory: " + FaultTable.report());
+    				System.out.println("Memory: " + PageTable.teardownReport());
+    				if (Concurrency.enabled)
+    					System.out.println("Memory: " + Concurrency.report());
+    				if (ReferenceTrace.enabled) {
+    					ReferenceTrace.close();
+    					System.out.println("Memory: " + ReferenceTrace.report());
+    				}
+    			}
+    		});
+    	}
 
     }
 
@@ -71,9 +178,46 @@ public class MMU extends IflMMU
     static public PageTableEntry do_refer(int memoryAddress,int referenceType, ThreadCB thread)
     {
     	// Compute the page address 
-    	int pageAddress =  (memoryAddress/(int)Math.pow(2, getVirtualAddressBits()-getPageAddressBits()));
-    	PageTableEntry page = getPTBR().pages[pageAddress];
-    	
+    	int pageAddress = (memoryAddress >>> offsetBits) & pageMask;
+    	if (ReferenceTrace.enabled)
+    		ReferenceTrace.referenced(thread, memoryAddress, referenceType);
+    	// In concurrent mode the PTBR is not this thread's: take its task's table.
+    	if (Concurrency.enabled)
+    		return Concurrency.refer(thread.getTask().getPageTable(), pageAddress, referenceType, thread);
+    	PageTable pageTable = getPTBR();
+    	MemoryMetrics.referenced(pageTable, thread, referenceType);
+    	return refer(pageTable, pageAddress, referenceType, thread);
+    }
+
+    /**
+    Purpose: The part of do_refer after the counting: finds the page,
+    		 faults it in if it is not valid, and marks its frame.
+
+    @OSPProject Memory
+    */
+    static PageTableEntry refer(PageTable pageTable, int pageAddress, int referenceType, ThreadCB thread)
+    {
+    	// A page of a superpage is resident and valid: take it straight from
+    	// the task's table. Otherwise try the TLB first; on a miss, look in the
+    	// inverted page table if there is one, and take the page from the
+    	// task's table if it is not resident.
+    	PageTableEntry page = null;
+    	boolean tlbMiss = false;
+    	if (pageTable.superpages != null && pageTable.superpages[pageAddress >>> Superpages.order] >= 0) {
+    		page = pageTable.pages[pageAddress];
+    		Superpages.references++;
+    	} else {
+    		page = (tlb == null) ? null : tlb.lookup(pageTable, pageAddress);
+    		tlbMiss = (page == null);
+    		if (tlbMiss && invertedTable != null)
+    			page = invertedTable.lookup(pageTable, pageAddress);
+    		if (page == null)
+    			page = pageTable.pages[pageAddress];
+    	}
+    	// A write to a page that shares its frame gets the page a frame of its own.
+    	if (PageSharing.enabled && referenceType == GlobalVariables.MemoryWrite && page.isValid()
+    			&& PageSharing.sharing[page.getFrame().getID()] > 0)
+    		PageSharing.copyOnWrite(page);
     	
     	// Check if the page is invalid 
     	if (!page.isValid()) {
@@ -90,8 +234,8 @@ public class MMU extends IflMMU
     		}
     		
     		else {
-    			// Suspend the thread
-    			thread.suspend(page);
+    			// Suspend the thread until the page fault in flight is over.
+    			FaultTable.join(page, thread);
     		}
     		// Return the page if the thread status is not "ThreadKill".
     		if (thread.getStatus() == GlobalVariables.ThreadKill) {
@@ -99,12 +243,20 @@ public class MMU extends IflMMU
     				return page;
     		}
     	}
+    	FrameTableEntry frame = page.getFrame();
+    	// First use of a page that was read ahead?
+    	if (Prefetcher.unused.size() != 0 && Prefetcher.unused.contains(frame.getID()))
+    		Prefetcher.referenced(frame);
     	// Set the page's frame as referenced.
-		page.getFrame().setReferenced(true);
+		frame.markReferenced(true);
 		// Set the frame dirty bit to true (dirty) if the reference type is "MemoryWrite".	
 		if (referenceType == GlobalVariables.MemoryWrite) {
-			page.getFrame().setDirty(true);
+			frame.markDirty(true);
 		}
+		// Remember the translation for the next reference, unless another
+		// task got the CPU while this thread waited for the page fault.
+		if (tlb != null && tlbMiss && getPTBR() == pageTable)
+			tlb.insert(pageTable, pageAddress, page);
 	return page;
 	}
     		
@@ -123,8 +275,7 @@ public class MMU extends IflMMU
      */
     public static void atError()
     {
-
-
+    	MemoryMetrics.printSnapshot("at error");
     }
 
     /** Called by OSP after printing a warning message. The student
@@ -136,8 +287,7 @@ public class MMU extends IflMMU
      */
     public static void atWarning()
     {
-
-
+    	MemoryMetrics.printSnapshot("at warning");
     }
 
 
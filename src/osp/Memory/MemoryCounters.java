@@ -0,0 +1,72 @@
+package osp.Memory;
+
+/**
+Purpose: One set of the Memory module's event counts. MemoryMetrics keeps one
+		 for the whole module and one per thread; every PageTable has one for
+		 its task.
+
+@OSPProject Memory
+*/
+class MemoryCounters
+{
+	static final String CSV_HEADER = "reads,writes,locks,hits,faults,cleanEvictions,dirtyEvictions,"
+		+ "swapIns,swapOuts,swapTicks";
+
+	long reads;
+	long writes;
+	long locks;
+	long faults;
+//	Pages taken out of a frame: clean ones, and dirty ones written first.
+	long cleanEvictions;
+	long dirtyEvictions;
+//	Swap-file reads and writes, and the simulated ticks they took.
+	long swapIns;
+	long swapOuts;
+	long swapTicks;
+
+	long references()
+	{
+		return reads + writes;
+	}
+
+	/** References and locks that found their page in memory. */
+	long hits()
+	{
+		return Math.max(0, reads + writes + locks - faults);
+	}
+
+	void add(MemoryCounters other)
+	{
+		reads += other.reads;
+		writes += other.writes;
+		locks += other.locks;
+		faults += other.faults;
+		cleanEvictions += other.cleanEvictions;
+		dirtyEvictions += other.dirtyEvictions;
+		swapIns += other.swapIns;
+		swapOuts += other.swapOuts;
+		swapTicks += other.swapTicks;
+	}
+
+	String toCsv()
+	{
+		return reads + "," + writes + "," + locks + "," + hits() + "," + faults + "," + cleanEvictions + ","
+			+ dirtyEvictions + "," + swapIns + "," + swapOuts + "," + swapTicks;
+	}
+
+	String toJson()
+	{
+		return "{\"reads\":" + reads + ",\"writes\":" + writes + ",\"locks\":" + locks + ",\"hits\":" + hits()
+			+ ",\"faults\":" + faults + ",\"cleanEvictions\":" + cleanEvictions + ",\"dirtyEvictions\":"
+			+ dirtyEvictions + ",\"swapIns\":" + swapIns + ",\"swapOuts\":" + swapOuts + ",\"swapTicks\":"
+			+ swapTicks + "}";
+	}
+
+	public String toString()
+	{
+		return reads + " reads, " + writes + " writes, " + locks + " locks, " + faults + " faults ("
+			+ String.format("%.2f", reads + writes + locks == 0 ? 0.0 : 100.0 * faults / (reads + writes + locks))
+			+ "%), " + cleanEvictions + " clean and " + dirtyEvictions + " dirty evictions, " + swapIns
+			+ " swap-ins, " + swapOuts + " swap-outs, " + swapTicks + " swap ticks";
+	}
+}
@@ -0,0 +1,331 @@
+package osp.Memory;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.*;
+import osp.Hardware.*;
+import osp.IFLModules.*;
+import osp.Tasks.*;
+import osp.Threads.*;
+import osp.Utilities.*;
+
+/**
+Purpose: What the Memory module counts about itself: references by type,
+		 hits, faults, clean and dirty evictions, swap-ins and swap-outs with
+		 the simulated ticks they took, and how far the replacement policy's
+		 hand went per selection. The counts are kept for the whole module
+		 (total), per task (PageTable.counters) and per thread.
+
+		 They can be seen
+		 	- through JMX, as osp.Memory:type=MemoryMetrics (MetricsMBean 1; off by default);
+		 	- in the file named by the MetricsFile key, which gets a row per
+		 	  scope at each of the NumberOfSnapshots points of the simulation
+		 	  ([General] section): CSV, or JSON lines if the name ends in .json;
+		 	- when OSP reports an error or a warning, with a snapshot of the
+		 	  frame table (MMU.atError and MMU.atWarning).
+
+@OSPProject Memory
+*/
+class MemoryMetrics implements MemoryMetricsMBean, DaemonInterface
+{
+	static final String OBJECT_NAME = "osp.Memory:type=MemoryMetrics";
+	static final int SNAPSHOT_FRAMES = 256;
+
+	static MemoryCounters total = new MemoryCounters();
+	private static Map<ThreadCB, MemoryCounters> threads = new ConcurrentHashMap<ThreadCB, MemoryCounters>();
+	private static Slot last;
+	private static boolean registered;
+
+	static String dumpFile;
+	static long dumps;
+
+//	The thread looked up last and its counters, so that a run of references
+//	by the same thread does not go through the map.
+	private static final class Slot
+	{
+		final ThreadCB thread;
+		final MemoryCounters counters;
+
+		Slot(ThreadCB thread, MemoryCounters counters)
+		{
+			this.thread = thread;
+			this.counters = counters;
+		}
+	}
+
+	static void init()
+	{
+		total = new MemoryCounters();
+		threads = new ConcurrentHashMap<ThreadCB, MemoryCounters>();
+		last = null;
+		dumps = 0;
+		dumpFile = MemoryParameters.get("MetricsFile", "");
+		if (dumpFile.length() == 0) {
+			dumpFile = null;
+		} else {
+			int snapshots = Math.max(1, MemoryParameters.getGeneralInt("NumberOfSnapshots", 10));
+			int length = MemoryParameters.getGeneralInt("SimulationLength", 250000);
+			Daemon.create("Metrics", new MemoryMetrics(), Math.max(1, length / snapshots));
+		}
+		if (!registered && MemoryParameters.getBoolean("MetricsMBean", false)) {
+			registered = true;
+			try {
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				ObjectName name = new ObjectName(OBJECT_NAME);
+				if (!server.isRegistered(name))
+					server.registerMBean(new StandardMBean(new MemoryMetrics(), MemoryMetricsMBean.class), name);
+			} catch (JMException e) {
+				System.err.println("Memory: cannot register " + OBJECT_NAME + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	Purpose: The counters of a thread.
+	*/
+	static MemoryCounters of(ThreadCB thread)
+	{
+		Slot slot = last;
+		if (slot != null && slot.thread == thread)
+			return slot.counters;
+		MemoryCounters counters = threads.get(thread);
+		if (counters == null) {
+			counters = new MemoryCounters();
+			threads.put(thread, counters);
+		}
+		last = new Slot(thread, counters);
+		return counters;
+	}
+
+	static void referenced(PageTable pageTable, ThreadCB thread, int referenceType)
+	{
+		MemoryCounters byThread = of(thread);
+		if (referenceType == GlobalVariables.MemoryWrite) {
+			total.writes++;
+			pageTable.counters.writes++;
+			byThread.writes++;
+		} else {
+			total.reads++;
+			pageTable.counters.reads++;
+			byThread.reads++;
+		}
+	}
+
+	static void locked(PageTableEntry page, ThreadCB thread)
+	{
+		total.locks++;
+		page.getTask().getPageTable().counters.locks++;
+		of(thread).locks++;
+	}
+
+	static void faulted(PageTableEntry page, ThreadCB thread)
+	{
+		total.faults++;
+		page.getTask().getPageTable().counters.faults++;
+		of(thread).faults++;
+	}
+
+	/** Called when "page" is taken out of its frame to make room. */
+	static void evicted(PageTableEntry page, boolean dirty)
+	{
+		MemoryCounters byTask = page.getTask().getPageTable().counters;
+		if (dirty) {
+			total.dirtyEvictions++;
+			byTask.dirtyEvictions++;
+		} else {
+			total.cleanEvictions++;
+			byTask.cleanEvictions++;
+		}
+	}
+
+	/** Called after "thread" read or wrote "page" in its swap file in "ticks" ticks. */
+	static void swapped(PageTableEntry page, ThreadCB thread, boolean in, long ticks)
+	{
+		MemoryCounters byTask = page.getTask().getPageTable().counters;
+		MemoryCounters byThread = of(thread);
+		if (in) {
+			total.swapIns++;
+			byTask.swapIns++;
+			byThread.swapIns++;
+		} else {
+			total.swapOuts++;
+			byTask.swapOuts++;
+			byThread.swapOuts++;
+		}
+		total.swapTicks += ticks;
+		byTask.swapTicks += ticks;
+		byThread.swapTicks += ticks;
+	}
+
+	/** Forgets the threads of a task that is going away. */
+	static void forget(TaskCB task)
+	{
+		Iterator<ThreadCB> i = threads.keySet().iterator();
+		while (i.hasNext()) {
+			if (i.next().getTask() == task)
+				i.remove();
+		}
+		last = null;
+	}
+
+	/**
+	Purpose: The module totals, including the references counted apart in
+			 concurrent mode.
+	*/
+	static MemoryCounters totals()
+	{
+		MemoryCounters sum = new MemoryCounters();
+		sum.add(total);
+		sum.reads += Concurrency.reads.sum();
+		sum.writes += Concurrency.writes.sum();
+		return sum;
+	}
+
+	/**
+	Purpose: Called every SimulationLength / NumberOfSnapshots ticks.
+	*/
+	public void unleash(ThreadCB thread)
+	{
+		dump();
+	}
+
+	/**
+	Purpose: Appends the counts of the module, of every live task and of every
+			 thread seen to the MetricsFile.
+	*/
+	static void dump()
+	{
+		if (dumpFile == null)
+			return;
+		long now = HClock.get();
+		StringBuilder out = new StringBuilder();
+//		The first dump of a run starts the file over.
+		if (dumps++ == 0 && !dumpFile.endsWith(".json"))
+			out.append("tick,scope,id," + MemoryCounters.CSV_HEADER + ",framesScanned,selections,freeFrames\n");
+		List<PageTable> tables = WorkingSets.tables;
+		if (dumpFile.endsWith(".json")) {
+			out.append("{\"tick\":").append(now).append(",\"total\":").append(totals().toJson())
+				.append(",\"framesScanned\":").append(MMU.policy.framesScanned).append(",\"selections\":")
+				.append(MMU.policy.selections).append(",\"freeFrames\":").append(PageFaultHandler.numFreeFrames())
+				.append(",\"tasks\":{");
+			for (int i = 0; i < tables.size(); i++)
+				out.append(i == 0 ? "" : ",").append('"').append(tables.get(i).getTask().getID()).append("\":")
+					.append(tables.get(i).counters.toJson());
+			out.append("},\"threads\":{");
+			boolean first = true;
+			for (Map.Entry<ThreadCB, MemoryCounters> entry : threads.entrySet()) {
+				out.append(first ? "" : ",").append('"').append(entry.getKey().getID()).append("\":")
+					.append(entry.getValue().toJson());
+				first = false;
+			}
+			out.append("}}\n");
+		} else {
+			out.append(now).append(",all,,").append(totals().toCsv()).append(',').append(MMU.policy.framesScanned)
+				.append(',').append(MMU.policy.selections).append(',').append(PageFaultHandler.numFreeFrames()).append('\n');
+			for (int i = 0; i < tables.size(); i++)
+				out.append(now).append(",task,").append(tables.get(i).getTask().getID()).append(',')
+					.append(tables.get(i).counters.toCsv()).append(",,,\n");
+			for (Map.Entry<ThreadCB, MemoryCounters> entry : threads.entrySet())
+				out.append(now).append(",thread,").append(entry.getKey().getID()).append(',')
+					.append(entry.getValue().toCsv()).append(",,,\n");
+		}
+		write(out.toString(), dumps > 1);
+	}
+
+	private static void write(String text, boolean append)
+	{
+		Writer out = null;
+		try {
+			out = new FileWriter(dumpFile, append);
+			out.write(text);
+		} catch (IOException e) {
+			System.err.println("Memory: cannot write " + dumpFile + ": " + e.getMessage());
+			dumpFile = null;
+		} finally {
+			if (out != null) {
+				try { out.close(); } catch (IOException e) { }
+			}
+		}
+	}
+
+	/**
+	Purpose: Prints the frame table (up to SNAPSHOT_FRAMES frames that are not
+			 free) and the counts, for MMU.atError and MMU.atWarning.
+	*/
+	static void printSnapshot(String when)
+	{
+		int frames = MMU.getFrameTableSize();
+		MyOut.print("osp.Memory.MMU", "Memory " + when + " at tick " + HClock.get() + ": " + frames + " frames, "
+			+ PageFaultHandler.numFreeFrames() + " free; " + totals());
+		int shown = 0;
+		for (int i = 0; i < frames; i++) {
+			FrameTableEntry frame = MMU.getFrame(i);
+			PageTableEntry page = frame.getPage();
+			if (page == null && !frame.isReserved() && frame.getLockCount() == 0)
+				continue;
+			if (shown++ == SNAPSHOT_FRAMES) {
+				MyOut.print("osp.Memory.MMU", "  ...");
+				break;
+			}
+			MyOut.print("osp.Memory.MMU", "  frame " + i + ": "
+				+ (page == null ? "empty" : "page " + page.getID() + " of task " + page.getTask().getID()
+					+ (page.isValid() ? "" : " (invalid)"))
+				+ (frame.isReferenced() ? ", referenced" : "") + (frame.isDirty() ? ", dirty" : "")
+				+ (frame.isReserved() ? ", reserved by task " + frame.getReserved().getID() : "")
+				+ (frame.getLockCount() > 0 ? ", " + frame.getLockCount() + " locks" : ""));
+		}
+	}
+
+	static String report()
+	{
+		return "metrics: " + totals() + "; " + String.format("%.1f", framesScannedPerEviction())
+			+ " frames scanned per selection, longest " + MMU.policy.longestScan
+			+ (dumpFile == null ? "" : ", " + dumps + " snapshots in " + dumpFile);
+	}
+
+	static double framesScannedPerEviction()
+	{
+		return MMU.policy.selections == 0 ? 0.0 : (double) MMU.policy.framesScanned / MMU.policy.selections;
+	}
+
+	public long getReads() { return totals().reads; }
+	public long getWrites() { return totals().writes; }
+	public long getLocks() { return total.locks; }
+	public long getHits() { return totals().hits(); }
+	public long getFaults() { return total.faults; }
+	public long getCleanEvictions() { return total.cleanEvictions; }
+	public long getDirtyEvictions() { return total.dirtyEvictions; }
+	public long getSwapIns() { return total.swapIns; }
+	public long getSwapOuts() { return total.swapOuts; }
+	public long getSwapTicks() { return total.swapTicks; }
+	public double getFramesScannedPerEviction() { return framesScannedPerEviction(); }
+	public long getLongestScan() { return MMU.policy.longestScan; }
+	public int getFreeFrames() { return PageFaultHandler.numFreeFrames(); }
+
+	public double getFaultRate()
+	{
+		MemoryCounters counters = totals();
+		long accesses = counters.references() + counters.locks;
+		return accesses == 0 ? 0.0 : (double) counters.faults / accesses;
+	}
+
+	public String[] getTaskCounters()
+	{
+		List<PageTable> tables = new ArrayList<PageTable>(WorkingSets.tables);
+		String[] lines = new String[tables.size()];
+		for (int i = 0; i < lines.length; i++)
+			lines[i] = "task " + tables.get(i).getTask().getID() + ": " + tables.get(i).counters;
+		return lines;
+	}
+
+	public String[] getThreadCounters()
+	{
+		List<String> lines = new ArrayList<String>();
+		for (Map.Entry<ThreadCB, MemoryCounters> entry : threads.entrySet())
+			lines.add("thread " + entry.getKey().getID() + " of task " + entry.getKey().getTask().getID() + ": "
+				+ entry.getValue());
+		return lines.toArray(new String[lines.size()]);
+	}
+}
@@ -0,0 +1,29 @@
+package osp.Memory;
+
+/**
+Purpose: The JMX view of MemoryMetrics, registered as
+		 osp.Memory:type=MemoryMetrics on the platform MBean server (e.g.,
+		 for jconsole). The per-task and per-thread attributes hold one line
+		 per task or thread.
+
+@OSPProject Memory
+*/
+public interface MemoryMetricsMBean
+{
+	long getReads();
+	long getWrites();
+	long getLocks();
+	long getHits();
+	long getFaults();
+	double getFaultRate();
+	long getCleanEvictions();
+	long getDirtyEvictions();
+	long getSwapIns();
+	long getSwapOuts();
+	long getSwapTicks();
+	double getFramesScannedPerEviction();
+	long getLongestScan();
+	int getFreeFrames();
+	String[] getTaskCounters();
+	String[] getThreadCounters();
+}
@@ -0,0 +1,130 @@
+package osp.Memory;
+
+import java.io.*;
+import java.util.*;
+
+/**
+Purpose: Reads the settings of the Memory module from the [Memory] section of
+		 the OSP parameter file (Misc/params.osp by default; another file can be
+		 given with -Dosp.params=...). OSP itself only knows its own keys and
+		 prints a warning for the others, so the module reads its keys here.
+		 Missing keys (or a missing file) fall back to the given defaults.
+		 A few keys of the [General] section are read too (getGeneralInt).
+		 Drivers can point the module at another file with use().
+
+@OSPProject Memory
+*/
+class MemoryParameters
+{
+	static final String PARAMS_FILE = System.getProperty("osp.params", "Misc/params.osp");
+	private static String paramsFile = PARAMS_FILE;
+
+	private static Map<String, String> memory;
+	private static Map<String, String> general;
+
+	static String get(String key, String defaultValue)
+	{
+		String value = section().get(key);
+		return value == null ? defaultValue : value;
+	}
+
+	static int getInt(String key, int defaultValue)
+	{
+		return toInt(key, section().get(key), defaultValue);
+	}
+
+	/**
+	Purpose: An integer setting of the [General] section, e.g. SimulationLength.
+	*/
+	static int getGeneralInt(String key, int defaultValue)
+	{
+		section();
+		return toInt(key, general.get(key), defaultValue);
+	}
+
+	private static int toInt(String key, String value, int defaultValue)
+	{
+		if (value == null)
+			return defaultValue;
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			System.err.println("Memory: bad value `" + value + "' for " + key + ", using " + defaultValue);
+			return defaultValue;
+		}
+	}
+
+	static boolean getBoolean(String key, boolean defaultValue)
+	{
+		String value = section().get(key);
+		if (value == null)
+			return defaultValue;
+		return value.equals("1") || value.equalsIgnoreCase("true") || value.equalsIgnoreCase("on");
+	}
+
+	/**
+	Purpose: Reads the settings from "fileName" from now on.
+	*/
+	static synchronized void use(String fileName)
+	{
+		paramsFile = fileName;
+		reload();
+	}
+
+	/**
+	Purpose: Forgets the loaded settings so that the next lookup reads the
+			 parameter file again.
+	*/
+	static synchronized void reload()
+	{
+		memory = null;
+		general = null;
+	}
+
+	private static synchronized Map<String, String> section()
+	{
+		if (memory == null) {
+			general = new HashMap<String, String>();
+			memory = load(paramsFile, general);
+		}
+		return memory;
+	}
+
+	private static Map<String, String> load(String fileName, Map<String, String> general)
+	{
+		Map<String, String> values = new HashMap<String, String>();
+		File file = new File(fileName);
+		if (!file.canRead())
+			return values;
+
+		BufferedReader in = null;
+		try {
+			in = new BufferedReader(new FileReader(file));
+			boolean inMemory = false;
+			boolean inGeneral = false;
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#"))
+					continue;
+				if (line.startsWith("[")) {
+					inMemory = line.equals("[Memory]");
+					inGeneral = line.equals("[General]");
+					continue;
+				}
+				if (!inMemory && !inGeneral)
+					continue;
+				String[] keyValue = line.split("\\s+", 2);
+				if (keyValue.length == 2)
+					(inMemory ? values : general).put(keyValue[0], keyValue[1].trim());
+			}
+		} catch (IOException e) {
+			System.err.println("Memory: cannot read " + fileName + ": " + e.getMessage());
+		} finally {
+			if (in != null) {
+				try { in.close(); } catch (IOException e) { }
+			}
+		}
+		return values;
+	}
+}
@@ -23,6 +23,13 @@ Authors: Abdulaziz Hasan 1555528, Mohammed Shukri 1647376
 Date of the Last modification: 16/4/2020
 */
 public class PageFaultHandler extends IflPageFaultHandler {
+
+//	Number of page faults (counted in MemoryMetrics) that found a free frame
+//	in the pool; the others had to reclaim a frame through the replacement policy.
+	static long poolFaults;
+//	Range faults (handleRangeFault), and the pages they read.
+	static long rangeFaults;
+	static long rangePages;
 	
     /** 
     Purpose: This method handles a page fault.
@@ -50,63 +57,91 @@ public class PageFaultHandler extends IflPageFaultHandler {
 		if (page.isValid()) {
 			return FAILURE;
 		}
+		MemoryMetrics.faulted(page, thread);
+		WorkingSets.faulted(page);
+//		 A page read while a frame holding the same data is resident shares that frame.
+		if (PageSharing.enabled && PageSharing.map(page, referenceType)) {
+			ThreadCB.dispatch();
+			return SUCCESS;
+		}
+//		 Bring in the page's whole superpage if there is room for it.
+		if (Superpages.enabled) {
+			int run = Superpages.takeRun(page, thread.getTask());
+			if (run >= 0) {
+				poolFaults++;
+				return Superpages.fill(page, run, thread, referenceType);
+			}
+		}
 //		 Creating a new empty frame. 
 		FrameTableEntry NFrame = null;
-//		 Searching for the first free frame, starting the search from frame[0].
-//		 The new frame found will be stored in the variable "NFrame"
-		NFrame = getFreeFrame();
-
-//		 Check if the frame is still empty
-		if (NFrame == null) {
-//			 Find an appropriate frame through SecondChance 
-			NFrame = SecondChance();
-//			 If the frame is still empty after performing SecondChance; return "NotEnoughMemory".
-			if (NFrame == null)
+//		 In concurrent mode another task can reserve the frame first; another
+//		 frame is picked then, a bounded number of times.
+		for (int tries = 0; NFrame == null; tries++) {
+			if (tries == MMU.getFrameTableSize())
 				return NotEnoughMemory;
-		}
-	
-//		 Set the validating thread of the page to input thread.
-		page.setValidatingThread(thread);
-//		 Create a new event: "event" of type SystemEvent() 
-//		 The event object is saved in the variable "event", because when pagefault handling 
-//		 is finished the thread will be resumed by
-//		 executing notifyThreads() on that event.
-	 	Event event = new SystemEvent("PageFaultHappend");
-//	 	 Suspend the thread. 
-	 	thread.suspend(event);
-		
-// 		 Checking if the frame is not reserved nor locked
-		if (!NFrame.isReserved() && NFrame.getLockCount() <= 0 ) {
+//			 Under memory pressure, the frame quotas of the tasks decide first.
+			if (WorkingSets.enabled && numFreeFrames() <= MMU.lowWater)
+				NFrame = WorkingSets.victim(page.getTask().getPageTable());
+//			 Searching for the first free frame, starting the search from frame[0].
+//			 The new frame found will be stored in the variable "NFrame"
+			if (NFrame == null) {
+				NFrame = getFreeFrame();
+				if (NFrame != null)
+					poolFaults++;
+				else
+//					Next best is a page that was read ahead and never used.
+					NFrame = Prefetcher.reclaimUnused();
+			}
 
-//			Protect the frame from theft by reserving the frame.
-			NFrame.setReserved(thread.getTask());
-			
+//			 Check if the frame is still empty
+			if (NFrame == null) {
+//				 Find an appropriate frame through the replacement policy (Second Chance by default)
+				NFrame = MMU.policy.selectVictim();
+//				 If the frame is still empty after asking the policy; return "NotEnoughMemory".
+				if (NFrame == null)
+					return NotEnoughMemory;
+			}
+
+// 			 Checking if the frame is not reserved nor locked; if so, protect
+//			 the frame from theft by reserving the frame.
+			if (!NFrame.isReserved() && NFrame.getLockCount() <= 0 && !NFrame.markReserved(thread.getTask()))
+				NFrame = null;
 		}
-//		If the frame contains a dirty page, then swap-out will
-//		be performed, followed by freeing the frame.
+	
+//		 Set the validating thread of the page to input thread, and suspend the
+//		 thread on an event (from FaultTable's pool) until the page fault is handled.
+//		 Threads that refer to the page meanwhile join this fault.
+		FaultTable.begin(page, thread, true);
+//		If the frame contains a page whose copy in swap is out of date, then
+//		swap-out will be performed, followed by freeing the frame. A page that
+//		is clean (e.g., written back by the write-back daemon) is just dropped.
 		PageTableEntry Npage = NFrame.getPage();
 		if (Npage != null) {
-
-			if (NFrame.isDirty()) {
-//				Swap-out
-				NFrame.getPage().getTask().getSwapFile().write(NFrame.getPage().getID(), NFrame.getPage(), thread);
+			boolean wasDirty = !Npage.swapCopyCurrent();
+
+//			Again if the page was written during the swap-out.
+			while (!Npage.swapCopyCurrent()) {
+//				Setting the frame's dirty bit to false = not dirty = clean, before
+//				the write, so that a write during the I/O sets it again.
+				NFrame.markDirty(false);
+//				Swap-out, together with the dirty pages next to it
+				SwapCluster.writeBack(Npage, thread);
 //				The thread that caused the pagefault can be killed by the simulator at any moment after
 //				the thread goes to sleep waiting for the swap-out to complete.
 //				FAILURE is returned in that case	
 				if (thread.getStatus() == GlobalVariables.ThreadKill) {
-					page.notifyThreads();
-					event.notifyThreads();
+					if (NFrame.getPage() == Npage)
+						NFrame.markDirty(true);
+					FaultTable.finish(page, false);
 					ThreadCB.dispatch();
 					return FAILURE;
 
 				}
-//				Setting the frame's dirty bit to false = not dirty = clean. 
-				NFrame.setDirty(false);
-	
 			}
 //			Freeing the frame:
-//			Dereferencing the frame.
-			NFrame.setReferenced(false);
+//			Dereferencing the frame, and cleaning it for the page coming in.
+			NFrame.markReferenced(false);
+			NFrame.markDirty(false);
 //			 Check if the page is not empty and the frame is not locked
 			if (Npage != null && Npage.getFrame().getLockCount() == 0) {
 //				 Emptying the frame by setting it to no page (null page) 
@@ -115,61 +150,230 @@ public class PageFaultHandler extends IflPageFaultHandler {
 				Npage.setValid(false);
 //				 Emptying the page's frame by setting it to null frame.
 				Npage.setFrame(null);
+				Npage.getTask().getPageTable().pageUnmapped(Npage);
+				MemoryMetrics.evicted(Npage, wasDirty);
+				MMU.policy.frameEvicted(NFrame, Npage);
+				Prefetcher.dropped(NFrame);
+				if (PageSharing.enabled)
+					PageSharing.evicted(NFrame);
+				if (MMU.tlb != null)
+					MMU.tlb.invalidate(Npage);
 
 			}
 
 		}
 //		Setting the page's frame to the new frame
 		page.setFrame(NFrame);
-//		Swap-in
-		page.getTask().getSwapFile().read(page.getID(), page, thread);
+		page.getTask().getPageTable().pageMapped(page);
+//		Swap-in, unless the page is a copy of a shared frame (copy-on-write)
+		if (!PageSharing.enabled || !PageSharing.copied(page))
+			SwapCluster.swapIn(page, thread);
 //		The thread that caused the pagefault can be killed by the simulator
 //		at any moment after the thread goes to sleep waiting for the swap-in to complete.
 //		FAILURE is returned in that case	
 		if (thread.getStatus() == ThreadKill) {
-			page.setValidatingThread(null);
 			page.setFrame(null);
-			page.notifyThreads();
+			page.getTask().getPageTable().pageUnmapped(page);
 			
 //			if (NFrame.getReserved() == thread.getTask()) {
 //				NFrame.setUnreserved(thread.getTask());
 //			}
 
-			NFrame.setReferenced(false);
-			NFrame.setDirty(false);
-			event.notifyThreads();
+			NFrame.markReferenced(false);
+			NFrame.markDirty(false);
 			NFrame.setPage(null);
+			releaseFrame(NFrame);
+			FaultTable.finish(page, false);
 			ThreadCB.dispatch();
 			return FAILURE;
 		}
 
 //		Setting the validity bit to true
 		page.setValid(true);
+		MMU.policy.frameLoaded(NFrame, page);
 //		Unreserving the frame if its still reserved
 		if (NFrame.getReserved() == thread.getTask())
 		{
-			NFrame.setUnreserved(thread.getTask());
+			NFrame.markUnreserved(thread.getTask());
 		}
-		NFrame.setReferenced(true);
-		page.notifyThreads();
-		event.notifyThreads();
+		NFrame.markReferenced(true);
 //		Setting the frame's dirty bit to true if the reference type is MemoryWrite, else unset the dirty bit
 		if (referenceType == MemoryWrite) {
-			NFrame.setDirty(true);
+			NFrame.markDirty(true);
 		} else {
-			NFrame.setDirty(false);
+			NFrame.markDirty(false);
 		}
-//		Finalizing by clearing the page's validity bit, notifying the threads then dispatching. 
-		page.setValidatingThread(null);
-		page.notifyThreads();
-		event.notifyThreads();
+		if (PageSharing.enabled)
+			PageSharing.loaded(NFrame, page);
+//		Clearing the page's validating thread and waking the threads waiting
+//		for the page, once, before any read-ahead I/O.
+		FaultTable.finish(page, true);
+//		Read the following pages too if SwapReadAround asks for it,
+//		and let the prefetcher look for a stream.
+		if (SwapCluster.readAround > 1)
+			SwapCluster.readAhead(page, thread);
+		if (Prefetcher.enabled)
+			Prefetcher.faulted(page);
 		ThreadCB.dispatch();
 		return SUCCESS;
 	}
+    /**
+    Purpose: Swaps a page into a free frame without a page fault, for pages
+	that are read ahead of their first reference. The frame is reserved
+	during the read and the page is loaded unreferenced and clean, so
+	that it is among the first to go if it is never used.
+
+	Inputs:
+		- page		an invalid page
+		- thread	the thread doing the read
+
+	Output:
+		true if the page was loaded; false if it is already valid or being
+		validated, no frame is free, or the thread was killed.
+
+    @OSPProject Memory
+    */
+	static boolean swapInFree(PageTableEntry page, ThreadCB thread) {
+		if (page.isValid() || page.getValidatingThread() != null)
+			return false;
+		TaskCB task = thread.getTask();
+		FrameTableEntry frame = reserveFreeFrame(task);
+		if (frame == null)
+			return false;
+		FaultTable.begin(page, thread, false);
+		page.setFrame(frame);
+		page.getTask().getPageTable().pageMapped(page);
+		SwapCluster.swapIn(page, thread);
+		if (thread.getStatus() == ThreadKill) {
+			page.setFrame(null);
+			page.getTask().getPageTable().pageUnmapped(page);
+			frame.setPage(null);
+			if (frame.getReserved() == task)
+				frame.markUnreserved(task);
+			releaseFrame(frame);
+			FaultTable.finish(page, false);
+			return false;
+		}
+		page.setValid(true);
+		frame.markReferenced(false);
+		frame.markDirty(false);
+		MMU.policy.frameLoaded(frame, page);
+		Prefetcher.readAhead(frame);
+		if (frame.getReserved() == task)
+			frame.markUnreserved(task);
+		FaultTable.finish(page, true);
+		return true;
+	}
+
+    /**
+    Purpose: One page fault for several invalid pages of a task, e.g., the
+	pages of an I/O buffer being locked (PageTableEntry.lockRange): they
+	are read into free frames back to back, and the thread waits once, for
+	all of them. Pages being validated already are left alone, and no more
+	pages are read than there are free frames above MMU.lowWater; the caller
+	faults in whatever is still invalid one page at a time.
+
+	Inputs:
+		- pages		the task's pages; those from "from" up to "to"
+					(excluded) are faulted in
+
+	Output:
+		SUCCESS, or FAILURE if the thread was killed.
+
+    @OSPProject Memory
+    */
+	static int handleRangeFault(ThreadCB thread, int referenceType, PageTableEntry[] pages, int from, int to) {
+		int room = numFreeFrames() - MMU.lowWater;
+		PageTableEntry[] missing = new PageTableEntry[Math.max(0, Math.min(to - from, room))];
+		int count = 0;
+		for (int i = from; i < to && count < missing.length; i++) {
+			if (!pages[i].isValid() && pages[i].getValidatingThread() == null)
+				missing[count++] = pages[i];
+		}
+//		A single page takes the usual path.
+		if (count < 2)
+			return SUCCESS;
+		FrameTableEntry[] frames = new FrameTableEntry[count];
+		for (int i = 0; i < count; i++) {
+			frames[i] = reserveFreeFrame(thread.getTask());
+			if (frames[i] == null) {
+				count = i;
+				break;
+			}
+		}
+		if (count == 0)
+			return SUCCESS;
+		MemoryMetrics.faulted(missing[0], thread);
+		WorkingSets.faulted(missing[0]);
+		poolFaults++;
+		rangeFaults++;
+		rangePages += count;
+		int result = loadPages(thread, missing[0], missing, frames, count, referenceType);
+		ThreadCB.dispatch();
+		return result;
+	}
+
+    /**
+    Purpose: Reads "count" invalid pages into as many free frames taken from
+	the pool and reserved for the thread's task, back to back, for one page fault on "page", one of them. The
+	thread waits for all of the reads on the fault's event; the others come
+	in unreferenced and clean. The caller dispatches.
+
+	Output:
+		SUCCESS, or FAILURE if the thread was killed, in which case all the
+		frames go back to the free pool.
+
+    @OSPProject Memory
+    */
+	static int loadPages(ThreadCB thread, PageTableEntry page, PageTableEntry[] pages, FrameTableEntry[] frames,
+			int count, int referenceType) {
+		TaskCB task = thread.getTask();
+		FaultTable.begin(page, thread, true);
+		for (int i = 0; i < count; i++) {
+			PageTableEntry p = pages[i];
+			if (p != page)
+				FaultTable.begin(p, thread, false);
+			p.setFrame(frames[i]);
+			p.getTask().getPageTable().pageMapped(p);
+		}
+		for (int i = 0; i < count; i++) {
+			SwapCluster.swapIn(pages[i], thread);
+			if (thread.getStatus() == ThreadKill) {
+				for (int j = 0; j < count; j++) {
+					PageTableEntry p = pages[j];
+					FrameTableEntry frame = frames[j];
+					p.setFrame(null);
+					p.getTask().getPageTable().pageUnmapped(p);
+					frame.setPage(null);
+					if (frame.getReserved() == task)
+						frame.markUnreserved(task);
+					frame.markReferenced(false);
+					frame.markDirty(false);
+					releaseFrame(frame);
+					FaultTable.finish(p, false);
+				}
+				return FAILURE;
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			PageTableEntry p = pages[i];
+			FrameTableEntry frame = frames[i];
+			p.setValid(true);
+			MMU.policy.frameLoaded(frame, p);
+			if (frame.getReserved() == task)
+				frame.markUnreserved(task);
+			frame.markReferenced(p == page);
+			frame.markDirty(p == page && referenceType == MemoryWrite);
+		}
+		for (int i = 0; i < count; i++)
+			FaultTable.finish(pages[i], true);
+		return SUCCESS;
+	}
+
     /** 
-    Purpose: Calculate the current number of free frames. It does not matter where the
-	search in the frame table starts. Note: this method will not change the value
-	of the reference bits, dirty bits or MMU.Cursor.
+    Purpose: Calculate the current number of free frames. The count is kept by
+	the free-frame pool (MMU.freeFrames), so no search of the frame table is needed.
+	Note: this method will not change the value of the reference bits, dirty bits or MMU.Cursor.
 
     Output:
      	Integer of type (int) represnting the current number of free frames.
@@ -181,24 +385,18 @@ public class PageFaultHandler extends IflPageFaultHandler {
     */
 	static int numFreeFrames() {
 
-		int curentFreeFrames = 0;
-		FrameTableEntry frame;
-		for (int i = 0; i < MMU.getFrameTableSize(); i++) {
-			frame = MMU.getFrame(i);
-			if ((frame.getPage() == null) && (!frame.isReserved()) && (frame.getLockCount() == 0) && frame != null) {
-				curentFreeFrames++;
-			}
-		}
-		return curentFreeFrames;
+		return MMU.freeFrames.size();
 
 	}
 
 
     /** 
-    Purpose: Looks for a free frame; returns the first free frame starting the search from frame[0].
+    Purpose: Takes a free frame out of the free-frame pool (MMU.freeFrames).
+    		 A frame that stopped being free behind the pool's back
+    		 (e.g., reserved or locked by OSP) is dropped and the next one is tried.
 
     Output:
-       Returns a frame of type FrameTableEntry.
+       Returns a frame of type FrameTableEntry, or null if there is no free frame.
 
     @OSPProject Memory
 
@@ -207,125 +405,104 @@ public class PageFaultHandler extends IflPageFaultHandler {
     */
 
 	static FrameTableEntry getFreeFrame() {
-		//int curentFreeFrames = 0;
-		FrameTableEntry frame = null;
-		int i =0;
-		while (i < MMU.getFrameTableSize()) {
-			frame = MMU.getFrame(i);
-			if ((!frame.isReserved() && frame.getLockCount() == 0)) {
-				break;
+		int frameID;
+		while ((frameID = MMU.freeFrames.take()) >= 0) {
+			FrameTableEntry frame = MMU.getFrame(frameID);
+			FrameBits.set(FrameBits.free, frameID, false);
+			if (isFree(frame)) {
+				return frame;
 			}
-			i++;
 		}
-		return frame;
+		return null;
 
 	}
 
     /** 
-    Purpose: Frees frames using the Second Chance approach.
-			 The search uses the MMU variable MMU.Cursor to
-			 specify the starting frame index of the search.
+    Purpose: Takes a free frame out of the pool and reserves it for a task.
+    		 In concurrent mode, a frame that another task reserved first is
+    		 left to it and the next one is tried.
 
     Output:
-		     Returns a frame of type FrameTableEntry.
+       The reserved frame, or null if there is no free frame.
 
     @OSPProject Memory
-
-    Authors: Abdulaziz Hasan 1555528, Mohammed Shukri 1647376
-    Date of the Last modification: 17/4/2020
     */
-	 static FrameTableEntry SecondChance() {
+	static FrameTableEntry reserveFreeFrame(TaskCB task) {
 		FrameTableEntry frame;
-		boolean isdirty = true;
-		int frameID = 0;
-		int counter = 0;
-		
-		//Phase I - Batch freeing of occupied frames that are clean. 
-		
-		while ((counter > (2 * MMU.getFrameTableSize())) && (numFreeFrames() <= MMU.wantFree)) {
-			
-				frame = MMU.getFrame(MMU.Cursor);
-
-				//1. If a page's reference bit is set, clear it and move to the next frame 
-			if (frame.isReferenced()) {
-				frame.setReferenced(false);
-				MMU.Cursor++; // or could try frame = MMU.getFrame(MMU.Cursor + 1);
-			}
+		do {
+			frame = getFreeFrame();
+		} while (frame != null && !frame.markReserved(task));
+		return frame;
+	}
 
-			// 2. Finding a clean frame; i.e. a frame containing a page and whose reference bit is
-			// not set, and the frame is not locked and not reserved and not dirty.
-			if (frame.getPage() != null && frame.isReferenced() == false && frame.getLockCount() == 0 && 
-					frame.isReserved() == false && frame.isDirty() == false ) {
-				// a. freeing the frame
-				// b. Updating a page table
-				frameFreeing(frame);
-			}
-			if (frame.getLockCount() == 0 && !frame.isReserved() && frame.isDirty() && isdirty ) {
-				frameID = frame.getID();
-				isdirty = false;
-			}
-			MMU.Cursor = (MMU.Cursor + 1) % MMU.getFrameTableSize();
-			counter++;
+    /** 
+    Purpose: Checks whether a frame is free, i.e., holds no page, is not reserved
+    		 and is not locked.
 
-		}
+    @OSPProject Memory
+    */
+	static boolean isFree(FrameTableEntry frame) {
+		return frame.getPage() == null && !frame.isReserved() && frame.getLockCount() == 0;
+	}
 
-		/*- Phase II - Skip if the number of free frames is wantFree, otherwise do the following: */
-		
-		if (numFreeFrames() != MMU.wantFree) {
-			if (!isdirty)
-				// Return the first dirty frame
-				return new FrameTableEntry(frameID);
-//			If the number of free frames from Phase I is less than wantFree and we did
-//			not come across any dirty frames
-			if (numFreeFrames() < MMU.wantFree) {
-//				Invoking getFreeFrame() to get a free frame. 
-				FrameTableEntry freeFrame = getFreeFrame();
-//				Return the free frame.
-				return freeFrame;
-			}
+    /** 
+    Purpose: Returns a frame to the free-frame pool if it has become free.
+    		 Must be called after every change that can make a frame free.
 
+    @OSPProject Memory
+    */
+	static void releaseFrame(FrameTableEntry frame) {
+		if (isFree(frame)) {
+			MMU.freeFrames.add(frame.getID());
+			FrameBits.set(FrameBits.free, frame.getID(), true);
 		}
-		/* Phase III - Phase one managed to free "wantFree" frames */
-		else {
-			if (numFreeFrames() == MMU.wantFree) {
-//				invoking getFreeFrame() to get a free frame.
-				FrameTableEntry freeFrame = getFreeFrame();
-//				Returning the free frame.
-				return freeFrame;
-			}
-		}
-		// Return null if no appropriate frame is found.
-		return null;
-
 	}
 
+    /** 
+    Purpose: Frees a clean frame that a replacement policy picked, and
+    		 updates the page table of the page that was in it.
+
+    Output:
+    		 The frame, or null if the page was written since it was last
+    		 saved to swap (in concurrent mode, maybe since it was picked) and stays.
+
+    @OSPProject Memory
+    */
 	 static FrameTableEntry frameFreeing (FrameTableEntry frame) {
 		 
+		 	PageTableEntry page = frame.getPage();
+		 	// In concurrent mode a write may have hit the page since it was picked;
+		 	// once the page is invalid, references to it wait for the fault lock.
+		 	if (Concurrency.enabled) {
+		 		synchronized (Concurrency.stripe(frame.getID())) {
+		 			if (frame.isDirty() || !page.swapCopyCurrent())
+		 				return null;
+		 			page.setValid(false);
+		 		}
+		 	} else if (!page.swapCopyCurrent()) {
+		 		// Dropping the page would lose a write.
+		 		return null;
+		 	}
 			// a. freeing the frame
 			frame.setPage(null);
-			frame.setDirty(false);
-			frame.setReferenced(false);
+			frame.markDirty(false);
+			frame.markReferenced(false);
 			// b. Updating a page table
-			frame.getPage().setFrame(null);
-			frame.getPage().setValid(false);
+			page.setFrame(null);
+			page.setValid(false);
+			page.getTask().getPageTable().pageUnmapped(page);
+			MemoryMetrics.evicted(page, false);
+			MMU.policy.frameEvicted(frame, page);
+			Prefetcher.dropped(frame);
+			if (PageSharing.enabled)
+				PageSharing.evicted(frame);
+			if (MMU.tlb != null)
+				MMU.tlb.invalidate(page);
+			// c. Returning the frame to the free-frame pool
+			releaseFrame(frame);
 			return frame;
 	 }
 
-	 static Event reserve(ThreadCB thread, PageTableEntry page, FrameTableEntry frame) {
-//		Create a new event: "event" of type SystemEvent() 
-//		The event object is saved in the variable "event", because when pagefault handling 
-//		is finished the thread will be resumed by
-//		executing notifyThreads() on that event.
-	 	Event event = new SystemEvent("PageFaultHappend");
-//	 	Suspend the thread. 
-	 	thread.suspend(event);
-//		Set the validating thread of the page to input thread.
-		page.setValidatingThread(thread);
-//		Protect the frame from theft by reserving the frame.
-		frame.setReserved(thread.getTask());
-		return event; 
-	 }
-
 }
 
 /*
@@ -0,0 +1,158 @@
+package osp.Memory;
+
+import osp.IFLModules.*;
+import osp.Threads.*;
+import osp.Tasks.*;
+import osp.Utilities.*;
+
+/**
+Purpose: A page-out daemon that keeps frames free ahead of page faults, so
+		 that most faults can take a frame straight from the free pool instead
+		 of running the replacement policy and waiting for a swap-out.
+
+		 OSP wakes the daemon every PageOutInterval ticks. If fewer than
+		 MMU.lowWater frames are free, it asks the replacement policy for
+		 victims until MMU.highWater frames are free: clean victims are freed
+		 at once, dirty ones are first written back to the swap file by the
+		 daemon thread.
+
+		 The daemon is turned on with the PageOutDaemon key of the [Memory]
+		 section in Misc/params.osp.
+
+@OSPProject Memory
+*/
+class PageOutDaemon extends GlobalVariables implements DaemonInterface
+{
+//	Number of wake-ups, of wake-ups that found the pool below the low
+//	watermark, and of pages written back and frames freed by the daemon.
+	static long wakeups;
+	static long reclaims;
+	static long pagesWritten;
+	static long framesFreed;
+
+	static void reset()
+	{
+		wakeups = 0;
+		reclaims = 0;
+		pagesWritten = 0;
+		framesFreed = 0;
+	}
+
+	/**
+	Purpose: Called by OSP every PageOutInterval ticks with the daemon's thread.
+
+	Inputs:
+		- thread	the thread the daemon runs in; it is suspended while
+					dirty pages are written back.
+	*/
+	public void unleash(ThreadCB thread)
+	{
+		Concurrency.lock();
+		try {
+			wakeUp(thread);
+		} finally {
+			Concurrency.unlock();
+		}
+	}
+
+	private static void wakeUp(ThreadCB thread)
+	{
+		wakeups++;
+		if (PageFaultHandler.numFreeFrames() >= MMU.lowWater)
+			return;
+		reclaims++;
+//		Split the cold superpages first, so that their pages can go one by one.
+		if (Superpages.enabled)
+			Superpages.relieve();
+		int free = PageFaultHandler.numFreeFrames();
+		reclaim(MMU.highWater, thread);
+		framesFreed += Math.max(0, PageFaultHandler.numFreeFrames() - free);
+	}
+
+	/**
+	Purpose: Frees frames chosen by the replacement policy until "target"
+			 frames are free, the policy finds nothing more to free, or
+			 the thread is killed.
+	*/
+	static void reclaim(int target, ThreadCB thread)
+	{
+		ReplacementPolicy policy = MMU.policy;
+		int savedTarget = policy.freeTarget;
+		policy.freeTarget = target;
+		try {
+			while (PageFaultHandler.numFreeFrames() < target) {
+				FrameTableEntry frame = policy.selectVictim();
+				if (frame == null)
+					break;
+				if (frame.getPage() == null) {
+//					The policy freed what it could and handed back a free frame: put it back.
+					PageFaultHandler.releaseFrame(frame);
+					break;
+				}
+				if (!pageOut(frame, thread))
+					break;
+			}
+		} finally {
+			policy.freeTarget = savedTarget;
+		}
+	}
+
+	/**
+	Purpose: Writes the page in a victim frame back if it is dirty, then frees
+			 the frame, unless the page was used while it was being written.
+
+	Output:
+		false if the thread was killed, true otherwise.
+	*/
+	static boolean pageOut(FrameTableEntry frame, ThreadCB thread)
+	{
+		PageTableEntry page = frame.getPage();
+		if (!page.swapCopyCurrent()) {
+			if (!writeBack(frame, thread))
+				return false;
+			pagesWritten++;
+//			Keep the page if it was written or referenced again meanwhile.
+			if (frame.getPage() != page || !page.swapCopyCurrent() || frame.isReferenced()
+					|| !ReplacementPolicy.isEvictable(frame)) {
+				PageFaultHandler.releaseFrame(frame);
+				return true;
+			}
+		}
+		PageFaultHandler.frameFreeing(frame);
+		return true;
+	}
+
+	/**
+	Purpose: Writes the page in a frame back to swap, with the frame reserved
+			 so that no page fault takes it meanwhile. The dirty bit is
+			 cleared first: a write during the I/O sets it again. The page
+			 stays in the frame.
+
+	Output:
+		false if the thread was killed, true otherwise. A frame that another
+		task reserved first (concurrent mode) is left alone, unwritten.
+	*/
+	static boolean writeBack(FrameTableEntry frame, ThreadCB thread)
+	{
+		PageTableEntry page = frame.getPage();
+		TaskCB task = thread.getTask();
+		if (!frame.markReserved(task))
+			return true;
+		frame.markDirty(false);
+		SwapCluster.writeBack(page, thread);
+		if (frame.getReserved() == task)
+			frame.markUnreserved(task);
+		if (thread.getStatus() == ThreadKill) {
+			if (frame.getPage() == page)
+				frame.markDirty(true);
+			return false;
+		}
+		return true;
+	}
+
+	static String report()
+	{
+		return "page-out daemon: " + wakeups + " wake-ups, " + reclaims + " below low watermark, "
+			+ pagesWritten + " pages written, " + framesFreed + " frames freed";
+	}
+}
@@ -0,0 +1,309 @@
+package osp.Memory;
+
+import java.util.*;
+import osp.IFLModules.*;
+import osp.Threads.*;
+import osp.Utilities.*;
+
+/**
+Purpose: Frames shared by pages of several tasks that hold the same data,
+		 with copy-on-write. SharedPages 0 (the default) turns sharing off.
+
+		 OSP pages carry no data, so their contents are a model: SharedPages
+		 percent of the page numbers (picked by a hash of the number) are
+		 the same in every task, like the code and read-only data of one
+		 program, as long as the page was never written; any other page, and
+		 a page once written, is unlike all others.
+
+		 A frame has one page in OSP, its owner (frame.getPage()); the pages
+		 that share it with the owner are valid and point to it, but are not
+		 in their tables' resident pages or in the inverted page table. A
+		 shared frame is clean and never locked: the first write to any of
+		 its pages (in MMU.refer), and a lock, take that page off the frame
+		 (the owner hands the frame over to a sharer) and fault it in again,
+		 into a frame of its own. That fault copies the page from the shared
+		 frame instead of reading it from swap, if the frame still holds it.
+		 When the replacement policy evicts a shared frame, all its pages go.
+
+		 A page that faults while a frame holding the same data is resident
+		 is mapped to that frame without I/O. A daemon, every MergeInterval
+		 ticks (0 for none), also looks at MergeBatch frames, going round the
+		 frame table, and merges the clean pages it finds twins of (those
+		 read ahead, or brought in with a superpage), freeing their frames.
+
+@OSPProject Memory
+*/
+class PageSharing extends GlobalVariables implements DaemonInterface
+{
+	static boolean enabled;
+	static int percent;
+	static int interval;
+	static int batch;
+
+//	The pages sharing a frame with its owner, by frame ID (null for none),
+//	and their number.
+	private static ArrayList<PageTableEntry>[] sharers;
+	static int[] sharing;
+//	A frame that held each shareable page's data when last seen, by page number.
+	private static Map<Integer, FrameTableEntry> byContent = new HashMap<Integer, FrameTableEntry>();
+//	Pages taken off a shared frame by a write, and the frame to copy them from.
+	private static Map<PageTableEntry, FrameTableEntry> copying = new IdentityHashMap<PageTableEntry, FrameTableEntry>();
+//	The frame the next daemon wake-up starts at.
+	private static int cursor;
+
+//	Faults mapped to a resident twin, pages merged by the daemon, copies on
+//	write (or lock), copies made from the shared frame rather than swap,
+//	sharers dropped with an evicted frame, and the pages sharing a frame now.
+	static long mapped;
+	static long merged;
+	static long copies;
+	static long copiedInMemory;
+	static long dropped;
+	static long shared;
+
+	@SuppressWarnings("unchecked")
+	static void init()
+	{
+		percent = Math.max(0, Math.min(100, MemoryParameters.getInt("SharedPages", 0)));
+		interval = Math.max(0, MemoryParameters.getInt("MergeInterval", 1000));
+		batch = Math.max(1, MemoryParameters.getInt("MergeBatch", 32));
+		// Sharers are not locked per frame; concurrent mode keeps its frames private.
+		enabled = percent > 0 && !Concurrency.enabled;
+		sharers = (ArrayList<PageTableEntry>[]) new ArrayList<?>[MMU.getFrameTableSize()];
+		sharing = new int[MMU.getFrameTableSize()];
+		byContent = new HashMap<Integer, FrameTableEntry>();
+		copying = new IdentityHashMap<PageTableEntry, FrameTableEntry>();
+		cursor = 0;
+		mapped = 0;
+		merged = 0;
+		copies = 0;
+		copiedInMemory = 0;
+		dropped = 0;
+		shared = 0;
+	}
+
+	/**
+	Purpose: Whether a page holds the same data as the pages with its number
+			 in the other tasks.
+	*/
+	static boolean shareable(PageTableEntry page)
+	{
+		if (page.writes != 0)
+			return false;
+		int h = page.getID() * 0x9e3779b9;
+		return ((h ^ (h >>> 16)) & 0xffff) * 100 < percent * 0x10000;
+	}
+
+	/**
+	Purpose: Whether a frame holds, clean, the data of shareable page number
+			 "id", and can be shared.
+	*/
+	private static boolean holds(FrameTableEntry frame, int id)
+	{
+		PageTableEntry owner = frame.getPage();
+		return owner != null && owner.getID() == id && owner.isValid() && shareable(owner)
+			&& !frame.isDirty() && frame.getLockCount() == 0 && !frame.isReserved();
+	}
+
+	/**
+	Purpose: Called by the page fault handler before it looks for a frame:
+			 maps a page being read to a resident frame holding its data.
+
+	Output:
+		true if the page was mapped and is valid.
+	*/
+	static boolean map(PageTableEntry page, int referenceType)
+	{
+		if (referenceType != MemoryRead || !shareable(page))
+			return false;
+		FrameTableEntry frame = byContent.get(page.getID());
+		if (frame == null || !holds(frame, page.getID()))
+			return false;
+		share(page, frame);
+		frame.markReferenced(true);
+		mapped++;
+		return true;
+	}
+
+	/**
+	Purpose: Called by the page fault handler when a page was read into a
+			 frame of its own: remembers the frame for the page's twins.
+	*/
+	static void loaded(FrameTableEntry frame, PageTableEntry page)
+	{
+		if (!shareable(page))
+			return;
+		FrameTableEntry known = byContent.get(page.getID());
+		if (known == null || !holds(known, page.getID()))
+			byContent.put(page.getID(), frame);
+	}
+
+	private static void share(PageTableEntry page, FrameTableEntry frame)
+	{
+		int id = frame.getID();
+		PageTableEntry owner = frame.getPage();
+		page.setFrame(frame);
+		// Setting the page's frame made the page the frame's page.
+		frame.setPage(owner);
+		page.setValid(true);
+		if (sharers[id] == null)
+			sharers[id] = new ArrayList<PageTableEntry>(2);
+		sharers[id].add(page);
+		sharing[id]++;
+		shared++;
+	}
+
+	/**
+	Purpose: Takes a page off its shared frame before it is written or
+			 locked: the page becomes invalid, and the fault that follows
+			 gives it a frame of its own, copied from this one.
+	*/
+	static void copyOnWrite(PageTableEntry page)
+	{
+		FrameTableEntry frame = page.getFrame();
+		unshare(page, frame);
+		page.setValid(false);
+		if (MMU.tlb != null)
+			MMU.tlb.invalidate(page);
+		copying.put(page, frame);
+		copies++;
+	}
+
+	/**
+	Purpose: Takes a page off a shared frame; the owner hands the frame over
+			 to its first sharer.
+	*/
+	private static void unshare(PageTableEntry page, FrameTableEntry frame)
+	{
+		int id = frame.getID();
+		if (frame.getPage() == page) {
+			PageTableEntry next = sharers[id].remove(0);
+			page.getTask().getPageTable().pageUnmapped(page);
+			frame.setPage(next);
+			next.getTask().getPageTable().pageMapped(next);
+		} else {
+			sharers[id].remove(page);
+		}
+		page.setFrame(null);
+		sharing[id]--;
+		shared--;
+	}
+
+	/**
+	Purpose: Called by the page fault handler before it reads a page: whether
+			 the page was taken off a shared frame that still holds its data,
+			 so that it can be copied from there instead.
+	*/
+	static boolean copied(PageTableEntry page)
+	{
+		FrameTableEntry frame = copying.remove(page);
+		if (frame == null || frame.getPage() == null || frame.getPage().getID() != page.getID()
+				|| !shareable(frame.getPage()) || !shareable(page))
+			return false;
+		copiedInMemory++;
+		return true;
+	}
+
+	/**
+	Purpose: Called when a frame is emptied by eviction: the pages sharing it
+			 lose it too. Their copies in swap are current, as shared frames
+			 are never written.
+	*/
+	static void evicted(FrameTableEntry frame)
+	{
+		int id = frame.getID();
+		if (sharing[id] == 0)
+			return;
+		for (PageTableEntry page : sharers[id]) {
+			page.setValid(false);
+			page.setFrame(null);
+			if (MMU.tlb != null)
+				MMU.tlb.invalidate(page);
+			MemoryMetrics.evicted(page, false);
+		}
+		dropped += sharing[id];
+		shared -= sharing[id];
+		sharers[id].clear();
+		sharing[id] = 0;
+	}
+
+	/**
+	Purpose: Called by PageTable when a task goes away, before its frames are
+			 freed: its pages leave the frames they share, and the frames it
+			 owns and shares are handed over to other tasks.
+	*/
+	static void forget(PageTable table)
+	{
+		Iterator<PageTableEntry> pending = copying.keySet().iterator();
+		while (pending.hasNext()) {
+			if (pending.next().getTask() == table.getTask())
+				pending.remove();
+		}
+		if (shared == 0)
+			return;
+		for (int id = 0; id < sharing.length; id++) {
+			if (sharing[id] == 0)
+				continue;
+			FrameTableEntry frame = MMU.getFrame(id);
+			for (int i = sharers[id].size() - 1; i >= 0; i--) {
+				PageTableEntry page = sharers[id].get(i);
+				if (page.getTask() == table.getTask()) {
+					unshare(page, frame);
+					page.setValid(false);
+				}
+			}
+			PageTableEntry owner = frame.getPage();
+			if (sharing[id] > 0 && owner != null && owner.getTask() == table.getTask()) {
+				unshare(owner, frame);
+				owner.setValid(false);
+			}
+		}
+	}
+
+	/**
+	Purpose: Called by OSP every MergeInterval ticks: merges the clean pages
+			 of the next MergeBatch frames into frames holding the same data.
+	*/
+	public void unleash(ThreadCB thread)
+	{
+		int frames = MMU.getFrameTableSize();
+		for (int n = 0; n < batch; n++) {
+			FrameTableEntry frame = MMU.getFrame(cursor);
+			cursor = (cursor + 1) % frames;
+			PageTableEntry page = frame.getPage();
+			if (page == null || sharing[frame.getID()] > 0 || !holds(frame, page.getID()))
+				continue;
+			PageTable table = page.getTask().getPageTable();
+			if (table.superpages != null && table.superpages[page.getID() >>> Superpages.order] >= 0)
+				continue;
+			FrameTableEntry twin = byContent.get(page.getID());
+			if (twin == null || twin == frame || !holds(twin, page.getID())) {
+				byContent.put(page.getID(), frame);
+				continue;
+			}
+			// The page moves to its twin's frame and its own frame is freed.
+			// OSP does not let a valid page change frames: it leaves its own
+			// first, and share() makes it valid again.
+			boolean referenced = frame.isReferenced();
+			page.setValid(false);
+			page.setFrame(null);
+			frame.setPage(null);
+			frame.markReferenced(false);
+			table.pageUnmapped(page);
+			MMU.policy.frameReleased(frame);
+			Prefetcher.dropped(frame);
+			PageFaultHandler.releaseFrame(frame);
+			share(page, twin);
+			if (referenced)
+				twin.markReferenced(true);
+			merged++;
+		}
+	}
+
+	static String report()
+	{
+		return "page sharing: " + shared + " pages sharing a frame, " + mapped + " faults mapped to a resident twin, "
+			+ merged + " pages merged, " + copies + " copied on write (" + copiedInMemory + " in memory), "
+			+ dropped + " dropped with an evicted frame";
+	}
+}
@@ -2,11 +2,12 @@ package osp.Memory;
 /**
     The PageTable class represents the page table for a given task.
     A PageTable consists of an array of PageTableEntry objects.  This
-    page table is of the non-inverted type.
+    page table is of the non-inverted type; with "PageTableType
+    Inverted" in params.osp, an InvertedPageTable in front of it finds
+    the resident pages.
 
     @OSPProject Memory
 */
-import java.lang.Math;
 import osp.Tasks.*;
 import osp.Utilities.*;
 import osp.IFLModules.*;
@@ -15,6 +16,42 @@ import osp.Hardware.*;
 public class PageTable extends IflPageTable
 {
 	int arraySize;
+//	Number of this page table, for hashing in the inverted page table, and
+//	the first entry of the task's chain there (-1 if none).
+	final int tableNumber = tableCount++;
+	int invertedHead = -1;
+	private static int tableCount;
+//	Numbers of the pages of this task that hold a frame, so that the
+//	teardown does not have to look at every frame in the frame table.
+	IndexSet residentPages;
+//	The first frame of each superpage of this task, by page number >>>
+//	Superpages.order, or -1; null until the task has a superpage.
+	int[] superpages;
+//	The fault stream of this task, for the prefetcher: the page of the last
+//	fault, the stride between the last two faults, how often in a row it
+//	was seen, and the farthest page queued for prefetching.
+	int lastFault = -1;
+	int stride;
+	int streak;
+	int queuedTo = -1;
+//	What this task did (see MemoryMetrics).
+	final MemoryCounters counters = new MemoryCounters();
+//	Page-fault frequency and frame quota of this task (see WorkingSets):
+//	the reference count at the last fault,
+//	the quota, the quota to restore after a deactivation, the hand of the
+//	sweep over the resident pages, and whether the last fault came soon
+//	enough after the one before for the task to get another frame.
+	long lastFaultReference;
+	int quota;
+	int savedQuota;
+	int hand;
+	boolean growing;
+
+//	Teardown figures over all tasks: count, frames freed, total and longest time.
+	static long teardowns;
+	static long teardownFrames;
+	static long teardownNanos;
+	static long maxTeardownNanos;
     /** 
     Purpose: This is the page table constructor. Will call
 
@@ -23,6 +60,10 @@ public class PageTable extends IflPageTable
 	   as its first statement. Then it will figure out
 	   the size of a page table and create the page table, 
 	   populating it with items of type, PageTableEntry.
+	   Every entry is created up front: OSP itself walks the pages
+	   array to pick the pages its threads reference and to print
+	   snapshots, so the array may not have holes. The module's own
+	   per-page structures are allocated as pages are used.
 
     			  
    @OSPProject Memory
@@ -36,16 +77,30 @@ public class PageTable extends IflPageTable
     	super(ownerTask);
     	// get the size of page table
     	int size = MMU.getPageAddressBits();
-    	arraySize = (int) Math.pow(2, size);
+    	arraySize = 1 << size;
     	// create page table array
     	pages = new PageTableEntry[arraySize];
     	
     	// initialize the pages
     	for (int i = 0; i< pages.length; i++)
     	pages[i] = new PageTableEntry(this, i);
+    	residentPages = new IndexSet(arraySize);
+    	WorkingSets.created(this);
+    	if (ReferenceTrace.enabled)
+    		ReferenceTrace.created(this);
 
 
     }
+    /**
+    Purpose: How much memory the page table of the task takes: the entries
+       OSP requires for every page, and the module's index of the resident
+       pages, which only grows with the part of the address space in use.
+    */
+    String memoryReport()
+    {
+    	return "page table " + arraySize + " entries, resident-page index " + residentPages.bytes() + " bytes";
+    }
+
     /** 
     Purpose: Freeing up main memory occupied by the task.
        Then unreserving the freed pages, if necessary.
@@ -56,33 +111,115 @@ public class PageTable extends IflPageTable
 */
     public void do_deallocateMemory()
     {
+    	Concurrency.lock();
+    	try {
+    		deallocate();
+    	} finally {
+    		Concurrency.unlock();
+    	}
+    }
+
+    private void deallocate()
+    {
+    	long start = System.nanoTime();
     	TaskCB task = getTask();
+    	// None of the task's translations may survive it.
+    	if (MMU.tlb != null)
+    		MMU.tlb.flush(this);
+    	Prefetcher.forget(this);
+    	MemoryMetrics.forget(task);
+    	if (SwapCache.enabled)
+    		SwapCache.forget(this);
+    	if (ReferenceTrace.enabled)
+    		ReferenceTrace.tornDown(this);
+    	WorkingSets.destroyed(this);
+    	if (superpages != null)
+    		Superpages.forget(this);
+    	if (PageSharing.enabled)
+    		PageSharing.forget(this);
     	
-    	for (int i=0; i< MMU.getFrameTableSize(); i++) {
-    		
-    		
-    		
-    		FrameTableEntry frame = MMU.getFrame(i);
-    		PageTableEntry page = frame.getPage();
-    				
-
-    		if ( page != null && page.getTask() == task )
-    		{
-    			// Nullify the page.
-    			frame.setPage(null);
-    	    	// Clean the page.
-    			frame.setDirty(false);
-    	    	// Unset the reference.
-    			frame.setReferenced(false);
-    			
-    			// Check if the task reserved a given frame then unreserve the freed pages.
-    			if(task == frame.getReserved())
-    				frame.setUnreserved(task);
+    	// Only the frames holding this task's pages need to be visited: the
+    	// task's chain in the inverted page table, or its resident pages.
+    	int freed = 0;
+    	if (MMU.invertedTable != null) {
+    		InvertedPageTable inverted = MMU.invertedTable;
+    		for (int e = inverted.first(this); e >= 0; e = inverted.next(e)) {
+    			releaseFrame(pages[inverted.pageNumber(e)], MMU.getFrame(e), task);
+    			freed++;
+    		}
+    		inverted.removeAll(this);
+    	} else {
+    		freed = residentPages.size();
+    		for (int i=0; i< freed; i++) {
+    			PageTableEntry page = pages[residentPages.get(i)];
+    			releaseFrame(page, page.getFrame(), task);
     		}
+    	}
+    	residentPages.clear();
+
+    	long time = System.nanoTime() - start;
+    	teardowns++;
+    	teardownFrames += freed;
+    	teardownNanos += time;
+    	maxTeardownNanos = Math.max(maxTeardownNanos, time);
+    }
+
+    /**
+    Purpose: Empties a frame holding a page of the task being torn down.
+    */
+    private static void releaseFrame(PageTableEntry page, FrameTableEntry frame, TaskCB task)
+    {
+    	// OSP may have taken the frame away already (e.g., when a thread was killed).
+    	if ( frame != null && frame.getPage() == page )
+    	{
+    		// Nullify the page.
+    		frame.setPage(null);
+        	// Clean the page.
+    		frame.markDirty(false);
+        	// Unset the reference.
+    		frame.markReferenced(false);
     		
+    		// Check if the task reserved a given frame then unreserve the freed pages.
+    		if(task == frame.getReserved())
+    			frame.markUnreserved(task);
+    		// Let the replacement policy forget the frame, then give it back to the free-frame pool.
+    		MMU.policy.frameReleased(frame);
+    		Prefetcher.dropped(frame);
+    		PageFaultHandler.releaseFrame(frame);
     	}
-    	
+    }
+
+    /** 
+    Purpose: Records that a page of this task was given a frame.
+
+    @OSPProject Memory
+    */
+    void pageMapped(PageTableEntry page)
+    {
+    	residentPages.add(page.getID());
+    	if (MMU.invertedTable != null)
+    		MMU.invertedTable.insert(this, page.getID(), page.getFrame().getID());
+    }
+
+    /** 
+    Purpose: Records that a page of this task lost its frame.
+
+    @OSPProject Memory
+    */
+    void pageUnmapped(PageTableEntry page)
+    {
+    	residentPages.remove(page.getID());
+    	if (superpages != null)
+    		Superpages.unmapped(this, page);
+    	if (MMU.invertedTable != null)
+    		MMU.invertedTable.remove(this, page.getID());
+    }
 
+    static String teardownReport()
+    {
+    	return "Teardown: " + teardowns + " tasks, " + teardownFrames + " frames freed, "
+    		+ (teardowns == 0 ? 0 : teardownNanos / teardowns) + " ns average, "
+    		+ maxTeardownNanos + " ns longest";
     }
 
 
@@ -15,6 +15,13 @@ import osp.IFLModules.*;
 
 public class PageTableEntry extends IflPageTableEntry
 {
+//	Writes to the page (counted by FrameTableEntry.markDirty), and their
+//	number when the page was last read from or written to swap.
+	int writes;
+	int savedWrites;
+//	Whether the page was ever saved to swap (its swap file or SwapCache).
+	boolean backed;
+
     /**
        The constructor. Must call
 
@@ -31,6 +38,47 @@ public class PageTableEntry extends IflPageTableEntry
 
     }
 
+    /**
+    Purpose: Whether the page's copy in swap (its swap file, or SwapCache) is
+    		 as new as the page, so that evicting it needs no write. Unlike the
+    		 frame's dirty bit, which is cleared when a write-back starts and
+    		 when a frame is emptied, this only changes when the page is
+    		 written or saved.
+
+    		 OSP sets the dirty bit itself too, without markDirty (its disk
+    		 interrupt handler does, after a file read into the page), so a
+    		 dirty bit that no write since the last save accounts for is
+    		 counted as a write here first.
+    */
+    boolean swapCopyCurrent()
+    {
+    	FrameTableEntry frame = getFrame();
+    	if (writes == savedWrites && frame != null && frame.getPage() == this) {
+    		if (Concurrency.enabled) {
+    			synchronized (Concurrency.stripe(frame.getID())) {
+    				if (writes == savedWrites && frame.isDirty())
+    					writes++;
+    			}
+    		} else if (frame.isDirty()) {
+    			writes++;
+    		}
+    	}
+    	return writes == savedWrites;
+    }
+
+    /**
+    Purpose: Whether the page has data to read in: it was saved to swap, it
+    		 was ever written (a dirty bit set by OSP itself included), or it
+    		 holds program data shared by the tasks (see PageSharing). A page
+    		 that has none of these was never written, and is all zeros.
+    */
+    boolean hasBackingCopy()
+    {
+    	// Counts a dirty bit OSP set behind markDirty as a write.
+    	swapCopyCurrent();
+    	return backed || writes != 0 || (PageSharing.enabled && PageSharing.shareable(this));
+    }
+
 
 
     /** 
@@ -50,9 +98,25 @@ public class PageTableEntry extends IflPageTableEntry
    Date of the Last modification: 15/4/2020
 */
     public int do_lock(IORB iorb)
+    {
+    	Concurrency.lock();
+    	try {
+    		return lockFrame(iorb);
+    	} finally {
+    		Concurrency.unlock();
+    	}
+    }
+
+    private int lockFrame(IORB iorb)
     {
     	// Getting the I/O request block thread on the page. 
     	ThreadCB iorbThread = iorb.getThread();
+    	MemoryMetrics.locked(this, iorbThread);
+    	if (ReferenceTrace.enabled)
+    		ReferenceTrace.locked(iorbThread, this);
+    	// Shared frames are never locked: the page gets a frame of its own first.
+    	if (PageSharing.enabled && isValid() && PageSharing.sharing[getFrame().getID()] > 0)
+    		PageSharing.copyOnWrite(this);
     			// Check if the page isn't valid
     			if (!isValid()) {
     				// To help identify the pages that are involved in a pagefault.
@@ -70,8 +134,8 @@ public class PageTableEntry extends IflPageTableEntry
     				// the pagefault is equal to this thread.
     				else if (getValidatingThread() != iorbThread) {
 
-    					// Suspend thread
-    					iorbThread.suspend(this);
+    					// Suspend thread until the page fault in flight is over.
+    					FaultTable.join(this, iorbThread);
 //					When the page becomes valid (or if the pagefault handler fails to make the
 //					page valid, say, because the original thread, that caused the pagefault
 //					was killed during the wait), the threads waiting on the page will be un-
@@ -87,9 +151,15 @@ public class PageTableEntry extends IflPageTableEntry
     				}
 
     			}
+    			// A fault that ran out of frames, or whose thread was killed, leaves no frame to lock.
+    			if (!isValid() || getFrame() == null)
+    				return FAILURE;
 
     	    	// increment lockCount
-    			getFrame().incrementLockCount();
+    			getFrame().addLock();
+    			// A locked frame is never free.
+    			MMU.freeFrames.remove(getFrame().getID());
+    			FrameBits.set(FrameBits.free, getFrame().getID(), false);
     			return SUCCESS;
 
     }
@@ -106,8 +176,74 @@ public class PageTableEntry extends IflPageTableEntry
 */
     public void do_unlock()
     {
-		// Decrementing lockCount if is not equal or less than 0 
-		if (getFrame().getLockCount() > 0) {getFrame().decrementLockCount();}
+    	Concurrency.lock();
+    	try {
+    		unlockFrame();
+    	} finally {
+    		Concurrency.unlock();
+    	}
+    }
+
+    private void unlockFrame()
+    {
+    	if (ReferenceTrace.enabled)
+    		ReferenceTrace.unlocked(this);
+    	// Decrementing lockCount if is not equal or less than 0 
+    	if (getFrame().getLockCount() > 0) {getFrame().removeLock();}
+    	// The last unlock of a frame whose task has gone frees the frame.
+    	PageFaultHandler.releaseFrame(getFrame());
+    }
+
+    /**
+    Purpose: Locks the "count" pages from this one on (as far as the page
+    		 table goes), e.g., all the pages an I/O buffer spans. The pages
+    		 that are not in memory are faulted in together, with one page
+    		 fault (PageFaultHandler.handleRangeFault), and then each page is
+    		 locked as by do_lock.
+
+    Output:
+    		 SUCCESS, or FAILURE if a page could not be locked, in which case
+    		 the pages this call locked are unlocked again.
+
+    @OSPProject Memory
+    */
+    public int lockRange(IORB iorb, int count)
+    {
+    	Concurrency.lock();
+    	try {
+    		PageTableEntry[] pages = getTask().getPageTable().pages;
+    		int last = Math.min(pages.length, getID() + count);
+    		if (PageFaultHandler.handleRangeFault(iorb.getThread(), GlobalVariables.MemoryLock, pages, getID(), last) == FAILURE)
+    			return FAILURE;
+    		for (int i = getID(); i < last; i++) {
+    			if (pages[i].lockFrame(iorb) == FAILURE) {
+    				for (int j = getID(); j < i; j++)
+    					pages[j].unlockFrame();
+    				return FAILURE;
+    			}
+    		}
+    		return SUCCESS;
+    	} finally {
+    		Concurrency.unlock();
+    	}
+    }
+
+    /**
+    Purpose: Unlocks the "count" pages from this one on, locked by lockRange.
+
+    @OSPProject Memory
+    */
+    public void unlockRange(int count)
+    {
+    	Concurrency.lock();
+    	try {
+    		PageTableEntry[] pages = getTask().getPageTable().pages;
+    		int last = Math.min(pages.length, getID() + count);
+    		for (int i = getID(); i < last; i++)
+    			pages[i].unlockFrame();
+    	} finally {
+    		Concurrency.unlock();
+    	}
     }
 
 
@@ -0,0 +1,206 @@
+package osp.Memory;
+
+import java.util.*;
+import osp.IFLModules.*;
+import osp.Threads.*;
+import osp.Utilities.*;
+
+/**
+Purpose: Detects tasks that fault on their pages with a fixed stride (a
+		 sequential scan has stride 1) and reads the next pages of the stream
+		 before they are referenced.
+
+		 Every page table remembers the page of its last fault, the stride
+		 between its last two faults and how many times in a row that stride
+		 was seen. Once PrefetchTrigger faults in a row had the same stride,
+		 the next PrefetchPages pages along the stride are queued. A daemon
+		 that OSP wakes every PrefetchInterval ticks reads the queued pages into
+		 free frames, as long as more than MMU.lowWater frames stay free, so
+		 the faulting thread never waits for a prefetch.
+
+		 A page read ahead of its first reference (by this class or by the
+		 swap-in read-around) is marked in "unused" until it is referenced.
+		 A reference to a marked page counts as a prefetch hit and moves the
+		 stream along by one more page. When the free pool is empty, a page
+		 fault takes a marked frame before asking the replacement policy, so
+		 prefetches that were never used are the first to go; they count as
+		 wasted.
+
+		 Turned on with the Prefetch key of the [Memory] section in
+		 Misc/params.osp; always off in concurrent mode.
+
+@OSPProject Memory
+*/
+class Prefetcher extends GlobalVariables implements DaemonInterface
+{
+	static boolean enabled;
+	static int depth;
+	static int trigger;
+	static final int QUEUE_LIMIT = 256;
+
+//	Frames holding a page that was read ahead and not referenced since.
+	static IndexSet unused;
+	private static ArrayDeque<PageTableEntry> queue;
+
+//	Streams found, pages queued, pages read ahead (by the prefetcher or the
+//	read-around), read-ahead pages later referenced, and read-ahead pages that
+//	left memory unreferenced.
+	static long streams;
+	static long queued;
+	static long loaded;
+	static long used;
+	static long wasted;
+
+	static void init()
+	{
+		enabled = MemoryParameters.getBoolean("Prefetch", true) && !Concurrency.enabled;
+		depth = Math.max(1, MemoryParameters.getInt("PrefetchPages", 4));
+		trigger = Math.max(1, MemoryParameters.getInt("PrefetchTrigger", 2));
+		unused = new IndexSet(MMU.getFrameTableSize());
+		queue = new ArrayDeque<PageTableEntry>();
+		streams = 0;
+		queued = 0;
+		loaded = 0;
+		used = 0;
+		wasted = 0;
+	}
+
+	/**
+	Purpose: Called after a page fault brought "page" in. Updates the fault
+			 stream of its task and queues the pages ahead of a confirmed
+			 stream.
+	*/
+	static void faulted(PageTableEntry page)
+	{
+		PageTable pageTable = page.getTask().getPageTable();
+		int id = page.getID();
+		int stride = id - pageTable.lastFault;
+		pageTable.lastFault = id;
+		if (stride != 0 && stride == pageTable.stride) {
+			pageTable.streak++;
+		} else {
+			pageTable.stride = stride;
+			pageTable.streak = 1;
+			pageTable.queuedTo = id;
+		}
+		if (pageTable.streak < trigger)
+			return;
+		if (pageTable.streak == trigger)
+			streams++;
+		for (int k = 1; k <= depth; k++)
+			enqueue(pageTable, id + k * stride);
+	}
+
+	/**
+	Purpose: Called by MMU.do_refer when a marked frame is referenced: the
+			 read-ahead was useful, and the stream moves one page further.
+	*/
+	static void referenced(FrameTableEntry frame)
+	{
+		unused.remove(frame.getID());
+		used++;
+		PageTableEntry page = frame.getPage();
+		PageTable pageTable = page.getTask().getPageTable();
+		if (enabled && pageTable.streak >= trigger
+				&& page.getID() == pageTable.lastFault + pageTable.stride) {
+			pageTable.lastFault = page.getID();
+			enqueue(pageTable, page.getID() + depth * pageTable.stride);
+		}
+	}
+
+	private static void enqueue(PageTable pageTable, int id)
+	{
+		if (id < 0 || id >= pageTable.pages.length || queue.size() >= QUEUE_LIMIT)
+			return;
+//		Pages up to queuedTo along the stride were queued by an earlier fault.
+		if ((id - pageTable.queuedTo) * pageTable.stride <= 0)
+			return;
+		pageTable.queuedTo = id;
+		PageTableEntry page = pageTable.pages[id];
+		if (page.isValid() || page.getValidatingThread() != null)
+			return;
+		queue.add(page);
+		queued++;
+	}
+
+	/** A queued page the stream of its task has already gone past. */
+	private static boolean isBehind(PageTableEntry page)
+	{
+		PageTable pageTable = page.getTask().getPageTable();
+		return (page.getID() - pageTable.lastFault) * pageTable.stride <= 0;
+	}
+
+	/**
+	Purpose: Called by OSP every PrefetchInterval ticks. Reads queued pages
+			 into free frames.
+	*/
+	public void unleash(ThreadCB thread)
+	{
+		while (!queue.isEmpty() && PageFaultHandler.numFreeFrames() > MMU.lowWater) {
+			PageTableEntry page = queue.poll();
+			if (isBehind(page))
+				continue;
+			PageFaultHandler.swapInFree(page, thread);
+			if (thread.getStatus() == ThreadKill)
+				return;
+		}
+	}
+
+	/** Called after a page was read into "frame" ahead of its first reference. */
+	static void readAhead(FrameTableEntry frame)
+	{
+		unused.add(frame.getID());
+		loaded++;
+	}
+
+	/** Called when "frame" is emptied; a marked frame was a wasted read. */
+	static void dropped(FrameTableEntry frame)
+	{
+		if (unused.contains(frame.getID())) {
+			unused.remove(frame.getID());
+			wasted++;
+		}
+	}
+
+	/**
+	Purpose: Frees a frame holding a read-ahead page that was never used.
+
+	Output:
+		A free frame, taken from the pool, or null if no such page could be
+		evicted.
+	*/
+	static FrameTableEntry reclaimUnused()
+	{
+		while (unused.size() > 0) {
+//			Members near the bottom of the stack were marked earliest.
+			int id = unused.get(0);
+			unused.remove(id);
+			FrameTableEntry frame = MMU.getFrame(id);
+			if (ReplacementPolicy.isEvictable(frame) && !frame.isDirty() && !frame.isReferenced()) {
+				wasted++;
+				PageFaultHandler.frameFreeing(frame);
+				return PageFaultHandler.getFreeFrame();
+			}
+		}
+		return null;
+	}
+
+	/** Drops the queued pages of a task that is going away. */
+	static void forget(PageTable pageTable)
+	{
+		Iterator<PageTableEntry> i = queue.iterator();
+		while (i.hasNext()) {
+			if (i.next().getTask().getPageTable() == pageTable)
+				i.remove();
+		}
+		pageTable.lastFault = -1;
+		pageTable.streak = 0;
+		pageTable.queuedTo = -1;
+	}
+
+	static String report()
+	{
+		return "prefetch: " + streams + " streams, " + queued + " pages queued, " + loaded + " read ahead, "
+			+ used + " used (" + (loaded == 0 ? 0 : 100 * used / loaded) + "% accuracy), " + wasted + " wasted";
+	}
+}
@@ -0,0 +1,263 @@
+package osp.Memory;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import osp.Threads.*;
+
+/**
+Purpose: Records the memory references of a simulation (MMU.do_refer), the
+		 page locks and unlocks of I/O (PageTableEntry.do_lock/do_unlock) and
+		 the creation and teardown of page tables in a compact binary trace,
+		 so that they can be fed through the module again with other
+		 settings without running OSP (see bench/src/osp/Memory/TraceReplay).
+
+		 Turned on with the TraceFile key of the [Memory] section in
+		 Misc/params.osp. The file is written through a memory-mapped window
+		 of WINDOW bytes that moves on as it fills, and is cut to its length
+		 when the simulation ends.
+
+		 Format: a header (MAGIC, VERSION, VirtualAddressBits,
+		 PageAddressBits, frame count; ints, big-endian), then one record per
+		 event. A record is a tag byte: the event in the low bits, plus
+		 NEW_THREAD if the thread (and its task) differ from the previous
+		 record's, in which case the thread ID and task ID follow as varints.
+		 Then, for a reference, the difference between its address and the
+		 previous reference's as a zigzag varint; for a lock or an unlock, the
+		 page number as a varint; nothing for a creation or a teardown. Most
+		 references take two or three bytes.
+
+@OSPProject Memory
+*/
+class ReferenceTrace
+{
+	static final int MAGIC = 0x4f53504d;	// "OSPM"
+	static final int VERSION = 1;
+	static final int HEADER = 20;
+	static final int WINDOW = 8 << 20;
+
+	static final int READ = 0;
+	static final int WRITE = 1;
+	static final int LOCK = 2;
+	static final int UNLOCK = 3;
+	static final int TEARDOWN = 4;
+	static final int CREATION = 5;
+	static final int EVENT_MASK = 0x7;
+	static final int NEW_THREAD = 0x8;
+
+	static boolean enabled;
+	private static String fileName;
+	private static RandomAccessFile file;
+	private static FileChannel channel;
+	private static MappedByteBuffer window;
+	private static long windowStart;
+	private static int lastThread = -1;
+	private static int lastTask = -1;
+	private static int lastAddress;
+
+	static long events;
+
+	static void init()
+	{
+		close();
+		events = 0;
+		lastThread = -1;
+		lastTask = -1;
+		lastAddress = 0;
+		fileName = MemoryParameters.get("TraceFile", "");
+		enabled = fileName.length() > 0;
+		if (!enabled)
+			return;
+		try {
+			file = new RandomAccessFile(fileName, "rw");
+			file.setLength(0);
+			channel = file.getChannel();
+			windowStart = 0;
+			window = channel.map(FileChannel.MapMode.READ_WRITE, 0, WINDOW);
+			window.putInt(MAGIC);
+			window.putInt(VERSION);
+			window.putInt(MMU.getVirtualAddressBits());
+			window.putInt(MMU.getPageAddressBits());
+			window.putInt(MMU.getFrameTableSize());
+		} catch (IOException e) {
+			System.err.println("Memory: cannot write trace " + fileName + ": " + e.getMessage());
+			enabled = false;
+		}
+	}
+
+	static synchronized void referenced(ThreadCB thread, int address, int referenceType)
+	{
+		tag(referenceType == MMU.MemoryWrite ? WRITE : READ, thread);
+		int delta = address - lastAddress;
+		lastAddress = address;
+		varint((delta << 1) ^ (delta >> 31));
+	}
+
+	static synchronized void locked(ThreadCB thread, PageTableEntry page)
+	{
+		tag(LOCK, thread);
+		varint(page.getID());
+	}
+
+	static synchronized void unlocked(PageTableEntry page)
+	{
+		tag(UNLOCK, null, page.getTask().getID());
+		varint(page.getID());
+	}
+
+	static synchronized void created(PageTable pageTable)
+	{
+		tag(CREATION, null, pageTable.getTask().getID());
+	}
+
+	static synchronized void tornDown(PageTable pageTable)
+	{
+		tag(TEARDOWN, null, pageTable.getTask().getID());
+	}
+
+	private static void tag(int event, ThreadCB thread)
+	{
+		tag(event, thread, thread.getTask().getID());
+	}
+
+	/**
+	Purpose: Starts a record. An event without a thread (unlock, creation,
+			 teardown) is given thread -1, and only the task is compared.
+	*/
+	private static void tag(int event, ThreadCB thread, int task)
+	{
+		events++;
+		int threadID = thread == null ? lastThread : thread.getID();
+		if (threadID == lastThread && task == lastTask) {
+			put(event);
+			return;
+		}
+		if (thread == null)
+			threadID = -1;
+		put(event | NEW_THREAD);
+		varint(threadID + 1);
+		varint(task);
+		lastThread = threadID;
+		lastTask = task;
+	}
+
+	private static void varint(int value)
+	{
+		while ((value & ~0x7f) != 0) {
+			put((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		put(value);
+	}
+
+	private static void put(int b)
+	{
+		if (!window.hasRemaining()) {
+			try {
+				windowStart += window.position();
+				window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, WINDOW);
+			} catch (IOException e) {
+				System.err.println("Memory: cannot extend trace " + fileName + ": " + e.getMessage());
+				enabled = false;
+				return;
+			}
+		}
+		window.put((byte) b);
+	}
+
+	/**
+	Purpose: Cuts the trace to what was written and closes it.
+	*/
+	static synchronized void close()
+	{
+		if (channel == null)
+			return;
+		long length = windowStart + window.position();
+		try {
+			window.force();
+			channel.truncate(length);
+			file.close();
+		} catch (IOException e) {
+			System.err.println("Memory: cannot close trace " + fileName + ": " + e.getMessage());
+		}
+		channel = null;
+		window = null;
+		file = null;
+		enabled = false;
+	}
+
+	static String report()
+	{
+		return "trace: " + events + " events in " + fileName;
+	}
+
+	/**
+	Purpose: Reads a trace back, one event at a time.
+	*/
+	static class Reader
+	{
+		final int virtualAddressBits;
+		final int pageAddressBits;
+		final int frames;
+		private final ByteBuffer in;
+
+//		The event just read: its type, thread (-1 if none), task, and the
+//		address of the last reference and page number of the last lock or unlock.
+		int event;
+		int thread = -1;
+		int task = -1;
+		int address;
+		int page;
+
+		Reader(String fileName) throws IOException
+		{
+			RandomAccessFile file = new RandomAccessFile(fileName, "r");
+			try {
+				in = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+			} finally {
+				file.close();
+			}
+			if (in.remaining() < HEADER || in.getInt() != MAGIC || in.getInt() != VERSION)
+				throw new IOException(fileName + " is not a memory reference trace");
+			virtualAddressBits = in.getInt();
+			pageAddressBits = in.getInt();
+			frames = in.getInt();
+		}
+
+		/**
+		Purpose: Reads the next event.
+
+		Output:
+			false at the end of the trace.
+		*/
+		boolean next()
+		{
+			if (!in.hasRemaining())
+				return false;
+			int tag = in.get();
+			event = tag & EVENT_MASK;
+			if ((tag & NEW_THREAD) != 0) {
+				thread = varint() - 1;
+				task = varint();
+			}
+			if (event == READ || event == WRITE) {
+				int zigzag = varint();
+				address += (zigzag >>> 1) ^ -(zigzag & 1);
+			} else if (event == LOCK || event == UNLOCK) {
+				page = varint();
+			}
+			return true;
+		}
+
+		private int varint()
+		{
+			int value = 0;
+			for (int shift = 0; ; shift += 7) {
+				int b = in.get();
+				value |= (b & 0x7f) << shift;
+				if ((b & 0x80) == 0)
+					return value;
+			}
+		}
+	}
+}
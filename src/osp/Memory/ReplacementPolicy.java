@@ -0,0 +1,112 @@
+package osp.Memory;
+
+/**
+Purpose: A page-replacement policy. The page fault handler asks the policy for
+		 a frame when the free-frame pool is empty, and tells it whenever a page
+		 is brought into a frame or taken out of one, so that policies that keep
+		 their own lists or history can stay in sync with the frame table.
+
+		 The policy is chosen with the "ReplacementPolicy" key of the [Memory]
+		 section in Misc/params.osp: SecondChance (the default), Clock, WSClock,
+		 Aging, ARC or ClockPro.
+
+@OSPProject Memory
+*/
+abstract class ReplacementPolicy
+{
+	static final String DEFAULT = "SecondChance";
+
+//	Number of times the policy was asked for a frame, how many of those it
+//	could not satisfy, how many frames its hands looked at (in all, and at
+//	most in one selection), how many pinned frames they stepped over by the
+//	bits without looking, and the time spent.
+	long selections;
+	long failures;
+	long framesScanned;
+	long pinnedSkipped;
+	long longestScan;
+	long selectionNanos;
+
+//	Number of free frames a policy that frees frames in a batch aims for:
+//	MMU.lowWater for a page fault, MMU.highWater for the page-out daemon.
+	int freeTarget = 1;
+
+	/**
+	Purpose: Creates the policy with the given name.
+
+	Output:
+		The policy, or Second Chance if the name is unknown.
+	*/
+	static ReplacementPolicy create(String name)
+	{
+		if (name.equalsIgnoreCase("SecondChance"))
+			return new SecondChancePolicy();
+		if (name.equalsIgnoreCase("Clock"))
+			return new ClockPolicy();
+		if (name.equalsIgnoreCase("WSClock"))
+			return new WSClockPolicy(MemoryParameters.getInt("WSClockWindow", 1000));
+		if (name.equalsIgnoreCase("Aging") || name.equalsIgnoreCase("NFU"))
+			return new AgingPolicy();
+		if (name.equalsIgnoreCase("ARC") || name.equalsIgnoreCase("CAR"))
+			return new ArcPolicy();
+		if (name.equalsIgnoreCase("ClockPro"))
+			return new ClockProPolicy();
+		System.err.println("Memory: unknown ReplacementPolicy `" + name + "', using " + DEFAULT);
+		return new SecondChancePolicy();
+	}
+
+	abstract String getName();
+
+	/**
+	Purpose: Finds a frame for a page fault when no frame is free.
+
+	Output:
+		Either a free frame, or an occupied frame that is neither locked nor
+		reserved and whose page the handler will swap out.
+		null if no such frame can be found.
+	*/
+	final FrameTableEntry selectVictim()
+	{
+		long start = System.nanoTime();
+		long scanned = framesScanned;
+		FrameTableEntry frame = findVictim();
+		selectionNanos += System.nanoTime() - start;
+		longestScan = Math.max(longestScan, framesScanned - scanned);
+		selections++;
+		if (frame == null)
+			failures++;
+		return frame;
+	}
+
+	abstract FrameTableEntry findVictim();
+
+	/** Called after "page" was swapped into "frame" and became valid. */
+	void frameLoaded(FrameTableEntry frame, PageTableEntry page)
+	{
+	}
+
+	/** Called after "page" was taken out of "frame" to make room for another page. */
+	void frameEvicted(FrameTableEntry frame, PageTableEntry page)
+	{
+	}
+
+	/** Called after "frame" was emptied because the task owning its page went away. */
+	void frameReleased(FrameTableEntry frame)
+	{
+	}
+
+	/**
+	Purpose: Checks whether a frame can be taken from its page right now.
+	*/
+	static boolean isEvictable(FrameTableEntry frame)
+	{
+		return frame.getPage() != null && frame.getLockCount() == 0 && !frame.isReserved();
+	}
+
+	public String toString()
+	{
+		return getName() + ": " + selections + " selections, " + failures + " failed, "
+			+ framesScanned + " frames scanned, " + pinnedSkipped + " pinned frames skipped, "
+			+ (selections == 0 ? 0 : selectionNanos / selections) + " ns per selection";
+	}
+}
@@ -0,0 +1,145 @@
+package osp.Memory;
+
+/**
+Purpose: The two-phase Second Chance policy. Phase I walks the frame table from
+		 MMU.Cursor and frees clean, unreferenced frames in a batch until
+		 freeTarget frames are free (MMU.lowWater on a page fault, MMU.highWater
+		 for the page-out daemon), giving referenced frames a second chance.
+		 If that is not enough, the first dirty frame seen is returned instead.
+
+@OSPProject Memory
+
+Authors: Abdulaziz Hasan 1555528, Mohammed Shukri 1647376
+*/
+class SecondChancePolicy extends ReplacementPolicy
+{
+	String getName()
+	{
+		return "SecondChance";
+	}
+
+    /**
+    Purpose: Frees frames using the Second Chance approach.
+			 The search uses the MMU variable MMU.Cursor to
+			 specify the starting frame index of the search.
+
+    Output:
+		     Returns a frame of type FrameTableEntry.
+
+    @OSPProject Memory
+
+    Authors: Abdulaziz Hasan 1555528, Mohammed Shukri 1647376
+    Date of the Last modification: 17/4/2020
+    */
+	FrameTableEntry findVictim() {
+		int frames = MMU.getFrameTableSize();
+		int frameID = -1;
+		int counter = 0;
+
+		//Phase I - Batch freeing of occupied frames that are clean.
+		// The frame table is walked 64 frames at a time over FrameBits: a run of
+		// frames with no clean, unreferenced, evictable frame in it (and no dirty
+		// one, while none is remembered) only needs its reference bits cleared.
+		// Frames in a run that has something to do are taken one at a time.
+
+		while ((counter < (2 * frames)) && (PageFaultHandler.numFreeFrames() < freeTarget)) {
+			int word = MMU.Cursor >>> 6;
+			int span = Math.min(64 - (MMU.Cursor & 63), Math.min(frames - MMU.Cursor, 2 * frames - counter));
+			long range = (span == 64 ? -1L : (1L << span) - 1) << MMU.Cursor;
+			long referenced = FrameBits.referenced[word] & range;
+			long evictable = FrameBits.evictable(word) & ~referenced & range;
+			long dirty = evictable & FrameBits.dirty[word];
+
+			if ((evictable & ~dirty) != 0 || (dirty != 0 && frameID < 0)) {
+				frameID = step(frameID);
+				MMU.Cursor = (MMU.Cursor + 1) % frames;
+				counter++;
+				continue;
+			}
+			//1. If a page's reference bit is set, clear it and move to the next frame
+			for (long bits = referenced; bits != 0; bits &= bits - 1)
+				MMU.getFrame((word << 6) + Long.numberOfTrailingZeros(bits)).markReferenced(false);
+			MMU.Cursor = (MMU.Cursor + span) % frames;
+			counter += span;
+		}
+		framesScanned += counter;
+		boolean isdirty = frameID < 0;
+
+		// The bits missed whatever OSP changed behind our back; catch up before
+		// giving up on Phase I.
+		if (isdirty && PageFaultHandler.numFreeFrames() < freeTarget)
+			FrameBits.resyncAll();
+
+		/*- Phase II - Skip if the number of free frames is freeTarget, otherwise do the following: */
+
+		if (PageFaultHandler.numFreeFrames() != freeTarget) {
+			if (!isdirty) {
+				// Return the first dirty frame, and start the next search after it
+				MMU.Cursor = (frameID + 1) % MMU.getFrameTableSize();
+				return MMU.getFrame(frameID);
+			}
+//			If the number of free frames from Phase I is less than freeTarget and we did
+//			not come across any dirty frames
+			if (PageFaultHandler.numFreeFrames() < freeTarget) {
+//				Invoking getFreeFrame() to get a free frame.
+				FrameTableEntry freeFrame = PageFaultHandler.getFreeFrame();
+//				Return the free frame.
+				return freeFrame;
+			}
+
+		}
+		/* Phase III - Phase one managed to free "freeTarget" frames */
+		else {
+			if (PageFaultHandler.numFreeFrames() == freeTarget) {
+//				invoking getFreeFrame() to get a free frame.
+				FrameTableEntry freeFrame = PageFaultHandler.getFreeFrame();
+//				Returning the free frame.
+				return freeFrame;
+			}
+		}
+		// Return null if no appropriate frame is found.
+		return null;
+
+	}
+
+    /**
+    Purpose: One step of Phase I on the frame at MMU.Cursor, by the frame
+			 itself rather than by its bits.
+
+    Inputs:
+		     frameID - the dirty frame remembered so far, or -1.
+
+    Output:
+		     The dirty frame remembered after this step, or -1.
+
+    @OSPProject Memory
+    */
+	private int step(int frameID) {
+		FrameTableEntry frame = MMU.getFrame(MMU.Cursor);
+		boolean hinted = !FrameBits.get(FrameBits.referenced, MMU.Cursor);
+
+		//1. If a page's reference bit is set, clear it and move to the next frame
+		if (frame.isReferenced()) {
+			frame.markReferenced(false);
+		}
+
+		// 2. Finding a clean frame; i.e. a frame containing a page and whose reference bit is
+		// not set, and the frame is not locked and not reserved and not dirty.
+		else if (isEvictable(frame) && frame.isDirty() == false ) {
+			// a. freeing the frame
+			// b. Updating a page table
+			PageFaultHandler.frameFreeing(frame);
+			hinted = false;
+		}
+		// 3. Remember the first dirty frame that has already had its second chance.
+		else if (isEvictable(frame) && frame.isDirty() && frameID < 0 ) {
+			frameID = frame.getID();
+			hinted = false;
+		}
+		// A frame freed by OSP itself (e.g., when a thread is killed) goes back to the pool.
+		PageFaultHandler.releaseFrame(frame);
+		if (hinted)
+			FrameBits.resync(frame);
+		return frameID;
+	}
+}
@@ -0,0 +1,234 @@
+package osp.Memory;
+
+import java.util.*;
+import osp.Tasks.*;
+import osp.Threads.*;
+import osp.Utilities.*;
+
+/**
+Purpose: Superpages: an aligned run of 2^SuperpageOrder pages of a task
+		 held in as many contiguous, aligned frames, recorded once in the
+		 task's PageTable.superpages. SuperpageOrder 0 (the default) turns
+		 them off; the largest order is 6, one FrameBits word.
+
+		 Promotion: when a page faults and none of the pages of its run is
+		 resident or being read, and a free run of frames can be found in
+		 FrameBits.free with more than MMU.lowWater frames left over, the
+		 whole run is read in by the one fault, back to back, and becomes a
+		 superpage. Otherwise the fault falls back to a small page.
+		 MMU.refer finds a page of a superpage through its run without the
+		 TLB or a validity check.
+
+		 Demotion: OSP knows only small pages, so a superpage is always also
+		 its pages, each valid in its frame; demoting it only drops the run.
+		 That happens when one of its pages loses its frame (the replacement
+		 policy evicted it or the task went away), and when the page-out
+		 daemon finds memory short: superpages of which no more than half
+		 the frames were referenced since the policy last cleared them are
+		 demoted, so that the policy can take their cold pages one by one.
+
+@OSPProject Memory
+*/
+class Superpages extends GlobalVariables
+{
+	static final int MAX_ORDER = 6;
+
+	static boolean enabled;
+	static int order;
+	static int size;
+
+//	Superpages filled, faults that fell back to a small page although
+//	superpages are on, references through a superpage, superpages demoted
+//	under memory pressure and when a page of theirs lost its frame, and the
+//	pages in superpages now.
+	static long fills;
+	static long fallbacks;
+	static long references;
+	static long demotions;
+	static long breaks;
+	static long covered;
+
+	static void init()
+	{
+		order = Math.max(0, Math.min(MAX_ORDER, MemoryParameters.getInt("SuperpageOrder", 0)));
+		size = 1 << order;
+		enabled = order > 0;
+		fills = 0;
+		fallbacks = 0;
+		references = 0;
+		demotions = 0;
+		breaks = 0;
+		covered = 0;
+	}
+
+	/**
+	Purpose: Takes a free run of frames for the superpage around a faulting
+			 page, if it can be one.
+
+	Output:
+		The first frame of the run, taken out of the free pool and reserved
+		for "task", or -1 if the fault has to fall back to a small page.
+	*/
+	static int takeRun(PageTableEntry page, TaskCB task)
+	{
+		PageTableEntry[] pages = page.getTask().getPageTable().pages;
+		int first = page.getID() & -size;
+		if (first + size > pages.length)
+			return -1;
+		for (int i = first; i < first + size; i++) {
+			if (pages[i].isValid() || pages[i].getValidatingThread() != null || pages[i].getFrame() != null) {
+				fallbacks++;
+				return -1;
+			}
+		}
+		int run = PageFaultHandler.numFreeFrames() - size > MMU.lowWater ? findRun() : -1;
+		if (run < 0) {
+			fallbacks++;
+			return -1;
+		}
+		for (int id = run; id < run + size; id++) {
+			MMU.freeFrames.remove(id);
+			FrameBits.set(FrameBits.free, id, false);
+		}
+		for (int id = run; id < run + size; id++) {
+			if (!MMU.getFrame(id).markReserved(task)) {
+//				Another task reserved a frame of the run first: give the rest back.
+				for (int i = run; i < run + size; i++) {
+					FrameTableEntry frame = MMU.getFrame(i);
+					if (i < id)
+						frame.markUnreserved(task);
+					if (i != id)
+						PageFaultHandler.releaseFrame(frame);
+				}
+				fallbacks++;
+				return -1;
+			}
+		}
+		return run;
+	}
+
+	/**
+	Purpose: Finds "size" free frames, aligned on "size", by FrameBits.free,
+			 checking the frames themselves.
+	*/
+	private static int findRun()
+	{
+		long mask = size == 64 ? -1L : (1L << size) - 1;
+		int frames = MMU.getFrameTableSize();
+		for (int w = 0; w < FrameBits.free.length; w++) {
+			long free = FrameBits.free[w];
+			if (free == 0)
+				continue;
+			for (int offset = 0; offset < 64; offset += size) {
+				if ((free & (mask << offset)) != (mask << offset))
+					continue;
+				int run = (w << 6) + offset;
+				if (run + size > frames)
+					break;
+				boolean ok = true;
+				for (int id = run; id < run + size && ok; id++)
+					ok = MMU.freeFrames.contains(id) && PageFaultHandler.isFree(MMU.getFrame(id));
+				if (ok)
+					return run;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	Purpose: Reads the run of pages around a faulting page into the run of
+			 frames from "run" on, and makes it a superpage. The faulting
+			 thread waits for all of the reads; the other pages of the run
+			 come in unreferenced and clean.
+
+	Output:
+		SUCCESS, or FAILURE if the thread was killed, in which case all the
+		frames go back to the free pool.
+	*/
+	static int fill(PageTableEntry page, int run, ThreadCB thread, int referenceType)
+	{
+		PageTable table = page.getTask().getPageTable();
+		int first = page.getID() & -size;
+		PageTableEntry[] pages = new PageTableEntry[size];
+		FrameTableEntry[] frames = new FrameTableEntry[size];
+		for (int i = 0; i < size; i++) {
+			pages[i] = table.pages[first + i];
+			frames[i] = MMU.getFrame(run + i);
+		}
+		int result = PageFaultHandler.loadPages(thread, page, pages, frames, size, referenceType);
+		if (result == SUCCESS) {
+			if (table.superpages == null) {
+				table.superpages = new int[(table.pages.length + size - 1) >>> order];
+				Arrays.fill(table.superpages, -1);
+			}
+			table.superpages[first >>> order] = run;
+			fills++;
+			covered += size;
+		}
+		ThreadCB.dispatch();
+		return result;
+	}
+
+	/**
+	Purpose: Called by PageTable.pageUnmapped: the superpage of a page that
+			 lost its frame, if any, is demoted.
+	*/
+	static void unmapped(PageTable table, PageTableEntry page)
+	{
+		int block = page.getID() >>> order;
+		if (table.superpages[block] < 0)
+			return;
+		table.superpages[block] = -1;
+		covered -= size;
+		breaks++;
+	}
+
+	/**
+	Purpose: Drops the superpages of a task that is going away.
+	*/
+	static void forget(PageTable table)
+	{
+		for (int block = 0; block < table.superpages.length; block++) {
+			if (table.superpages[block] >= 0)
+				covered -= size;
+		}
+		table.superpages = null;
+	}
+
+	/**
+	Purpose: Demotes the superpages of which no more than half the frames
+			 are referenced. Called by the page-out daemon when memory is short.
+	*/
+	static void relieve()
+	{
+		if (covered == 0)
+			return;
+		for (PageTable table : WorkingSets.tables) {
+			if (table.superpages == null)
+				continue;
+			for (int block = 0; block < table.superpages.length; block++) {
+				int run = table.superpages[block];
+				if (run < 0)
+					continue;
+				int used = 0;
+				for (int id = run; id < run + size; id++) {
+					if (FrameBits.get(FrameBits.referenced, id))
+						used++;
+				}
+				if (used * 2 <= size) {
+					table.superpages[block] = -1;
+					covered -= size;
+					demotions++;
+				}
+			}
+		}
+	}
+
+	static String report()
+	{
+		long resident = MMU.getFrameTableSize() - PageFaultHandler.numFreeFrames();
+		return "superpages of " + size + " pages: " + fills + " filled, " + fallbacks + " faults fell back to small pages, "
+			+ references + " references through superpages, " + demotions + " demoted under pressure, "
+			+ breaks + " broken by evictions; " + covered + " of " + resident + " resident pages covered";
+	}
+}
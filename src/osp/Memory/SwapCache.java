@@ -0,0 +1,180 @@
+package osp.Memory;
+
+import java.util.*;
+import osp.Threads.*;
+import osp.Utilities.*;
+
+/**
+Purpose: A compressed swap cache in RAM between the module and the swap
+		 files, like Linux's zswap. A page that is swapped out is stored in
+		 the cache instead of being written; a page that is swapped in and
+		 found in the cache needs no read. When the cache holds more than
+		 SwapCacheBytes, its least recently used pages are written to their
+		 swap files to make room. SwapCacheBytes 0 (the default) turns the
+		 cache off.
+
+		 OSP pages carry no data, so compression is a model: a page takes
+		 SwapCacheRatio percent of its size, give or take half of that
+		 depending on the page (some pages compress better than others), but
+		 never more than its size.
+
+		 A page stays in the cache after it is swapped in, so that a clean
+		 page evicted later can be faulted in again from the cache; it is
+		 stored again when it is written back dirty. The cache therefore
+		 always holds the latest copy written of its pages, and a swap file
+		 only has to be written when a page leaves the cache. A task's pages
+		 are dropped, unwritten, when the task goes away.
+
+@OSPProject Memory
+*/
+class SwapCache extends GlobalVariables
+{
+	static boolean enabled;
+	static long capacity;
+	static int ratio;
+	static int pageSize;
+
+//	A copy of a page in the cache. A page stored again gets a new copy.
+	private static final class Copy
+	{
+		final int size;
+
+		Copy(int size)
+		{
+			this.size = size;
+		}
+	}
+
+//	The cached pages, least recently used first.
+	private static LinkedHashMap<PageTableEntry, Copy> pages = new LinkedHashMap<PageTableEntry, Copy>(16, 0.75f, true);
+	static long bytes;
+
+//	Swap-ins found in the cache or not, pages stored, pages written to a swap
+//	file to make room, and the bytes stored before and after compression.
+	static long hits;
+	static long misses;
+	static long stores;
+	static long overflowWrites;
+	static long rawBytes;
+	static long storedBytes;
+
+	static void init()
+	{
+		capacity = Math.max(0, MemoryParameters.getInt("SwapCacheBytes", 0));
+		ratio = Math.max(1, Math.min(100, MemoryParameters.getInt("SwapCacheRatio", 40)));
+		pageSize = 1 << (MMU.getVirtualAddressBits() - MMU.getPageAddressBits());
+		enabled = capacity > 0;
+		pages = new LinkedHashMap<PageTableEntry, Copy>(16, 0.75f, true);
+		bytes = 0;
+		hits = 0;
+		misses = 0;
+		stores = 0;
+		overflowWrites = 0;
+		rawBytes = 0;
+		storedBytes = 0;
+	}
+
+	/**
+	Purpose: Swaps a page in from the cache.
+
+	Output:
+		true if the page was in the cache; false if it has to be read from
+		its swap file.
+	*/
+	static boolean load(PageTableEntry page)
+	{
+		if (pages.get(page) == null) {
+			misses++;
+			return false;
+		}
+		hits++;
+		return true;
+	}
+
+	/**
+	Purpose: Swaps a page out to the cache, then writes the least recently
+			 used pages to their swap files while the cache is over its size.
+			 A page that does not fit in the cache at all is written at once.
+
+	Inputs:
+		- thread	the thread doing the I/O; if it is killed, the cache
+					stops making room and stays over its size until the
+					next store.
+	*/
+	static void store(PageTableEntry page, ThreadCB thread)
+	{
+		int size = compressedSize(page);
+		if (size > capacity) {
+			SwapCluster.write(page, thread);
+			return;
+		}
+		Copy old = pages.put(page, new Copy(size));
+		if (old != null)
+			bytes -= old.size;
+		bytes += size;
+		stores++;
+		rawBytes += pageSize;
+		storedBytes += size;
+		while (bytes > capacity) {
+			Map.Entry<PageTableEntry, Copy> eldest = pages.entrySet().iterator().next();
+			PageTableEntry victim = eldest.getKey();
+			Copy copy = eldest.getValue();
+			if (victim == page)
+				return;
+//			The copy stays in the cache during the write, for faults on the page meanwhile.
+			SwapCluster.write(victim, thread);
+			if (thread.getStatus() == ThreadKill)
+				return;
+			Copy now = pages.remove(victim);
+			if (now == null)
+				continue;
+			if (now != copy) {
+//				Stored again during the write: the new copy stays.
+				pages.put(victim, now);
+				continue;
+			}
+			bytes -= copy.size;
+			overflowWrites++;
+		}
+	}
+
+	/**
+	Purpose: Drops the pages of a task that is going away.
+	*/
+	static void forget(PageTable pageTable)
+	{
+		if (pages.isEmpty())
+			return;
+		Iterator<Map.Entry<PageTableEntry, Copy>> i = pages.entrySet().iterator();
+		while (i.hasNext()) {
+			Map.Entry<PageTableEntry, Copy> entry = i.next();
+			if (entry.getKey().getTask() == pageTable.getTask()) {
+				bytes -= entry.getValue().size;
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	Purpose: The modelled compressed size of a page: SwapCacheRatio percent of
+			 the page size, scaled by 0.5 to 1.5 by a hash of the page.
+	*/
+	static int compressedSize(PageTableEntry page)
+	{
+		int h = (page.getTask().getID() * 31 + page.getID()) * 0x9e3779b9;
+		int spread = ((h ^ (h >>> 16)) & 0xff) + 128;	// 128..383, i.e. 0.5..1.5 of 256
+		long size = (long) pageSize * ratio * spread / (100 * 256);
+		return (int) Math.max(1, Math.min(pageSize, size));
+	}
+
+	static String report()
+	{
+		if (!enabled)
+			return "swap cache: off";
+		long loads = hits + misses;
+		return "swap cache: " + pages.size() + " pages in " + bytes + " of " + capacity + " bytes, "
+			+ hits + " of " + loads + " swap-ins hit (" + (loads == 0 ? 0 : hits * 100 / loads) + "%), "
+			+ String.format("%.2f", storedBytes == 0 ? 0.0 : (double) rawBytes / storedBytes)
+			+ ":1 compression, " + hits + " reads and " + (stores - overflowWrites) + " writes saved";
+	}
+}
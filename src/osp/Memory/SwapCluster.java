@@ -0,0 +1,198 @@
+package osp.Memory;
+
+import osp.Threads.*;
+import osp.Tasks.*;
+import osp.Hardware.*;
+import osp.Utilities.*;
+
+/**
+Purpose: Clusters swap I/O around the page being swapped. OSP's swap file
+		 takes one block per request, so a cluster is a run of requests for
+		 neighbouring blocks issued back to back in page order: the disk
+		 head is already on the right track for all but the first one.
+
+		 On swap-out, the dirty resident neighbours of the victim (up to
+		 SwapWriteCluster pages in all, same task, contiguous page numbers)
+		 are written together with it and stay resident, now clean, so that
+		 evicting them later needs no write.
+
+		 A page that was never written has nothing in swap to read: with
+		 DemandZero 1 (the default) its first touch zero-fills the frame
+		 without I/O. The page gets its swap slot when it is first saved.
+
+		 On swap-in, up to SwapReadAround - 1 pages after the faulting one
+		 are read into free frames as well, as long as more than MMU.lowWater
+		 frames stay free. SwapReadAround 0 or 1 turns this off.
+
+@OSPProject Memory
+*/
+class SwapCluster extends GlobalVariables
+{
+	static int writeCluster;
+	static int readAround;
+	static boolean demandZero;
+
+//	Neighbouring pages written with a victim, pages read ahead of a fault,
+//	swap-ins zero-filled instead of read, and pages given a swap slot.
+	static long clusteredWrites;
+	static long readAroundPages;
+	static long zeroFills;
+	static long slots;
+
+	static void init()
+	{
+		writeCluster = Math.max(1, MemoryParameters.getInt("SwapWriteCluster", 4));
+		readAround = Math.max(1, MemoryParameters.getInt("SwapReadAround", 0));
+		demandZero = MemoryParameters.getBoolean("DemandZero", true);
+		clusteredWrites = 0;
+		readAroundPages = 0;
+		zeroFills = 0;
+		slots = 0;
+	}
+
+	/**
+	Purpose: Writes a dirty victim back to its swap file, together with the
+			 run of dirty neighbours around it. The caller owns the victim's
+			 frame and clears its dirty bit; the neighbours' frames are
+			 reserved while the run is written and come back clean.
+
+	Inputs:
+		- victim	the page being swapped out
+		- thread	the thread doing the I/O; the caller checks whether it
+					was killed.
+	*/
+	static void writeBack(PageTableEntry victim, ThreadCB thread)
+	{
+		TaskCB task = victim.getTask();
+		if (writeCluster == 1) {
+			swapOut(victim, thread);
+			return;
+		}
+		PageTableEntry[] pages = task.getPageTable().pages;
+		int first = victim.getID();
+		int last = first;
+		TaskCB owner = thread.getTask();
+		while (last - first + 1 < writeCluster && first > 0 && reserve(pages[first - 1], owner))
+			first--;
+		while (last - first + 1 < writeCluster && last + 1 < pages.length && reserve(pages[last + 1], owner))
+			last++;
+
+		for (int i = first; i <= last; i++) {
+			if (i == victim.getID())
+				continue;
+//			A write during the I/O sets the dirty bit again.
+			pages[i].getFrame().markDirty(false);
+		}
+		for (int i = first; i <= last; i++) {
+			PageTableEntry page = pages[i];
+			boolean killed = thread.getStatus() == ThreadKill;
+			if (!killed) {
+				swapOut(page, thread);
+				if (i != victim.getID())
+					clusteredWrites++;
+			}
+			if (i == victim.getID())
+				continue;
+			FrameTableEntry frame = page.getFrame();
+			if (frame == null)
+				continue;
+			if (killed && frame.getPage() == page)
+				frame.markDirty(true);
+			if (frame.getReserved() == owner)
+				frame.markUnreserved(owner);
+		}
+	}
+
+	/**
+	Purpose: Swaps a page in: from the swap cache if it is there, else from
+			 its task's swap file; a page with no backing copy is zero-filled.
+	*/
+	static void swapIn(PageTableEntry page, ThreadCB thread)
+	{
+//		The page is not valid, so nothing writes it during the read.
+		page.savedWrites = page.writes;
+		if (demandZero && !page.hasBackingCopy()) {
+			zeroFills++;
+			return;
+		}
+		if (SwapCache.enabled && SwapCache.load(page))
+			return;
+		long start = HClock.get();
+		page.getTask().getSwapFile().read(page.getID(), page, thread);
+		MemoryMetrics.swapped(page, thread, true, HClock.get() - start);
+	}
+
+	/**
+	Purpose: Swaps a page out: to the swap cache if there is one, else to its
+			 task's swap file.
+	*/
+	static void swapOut(PageTableEntry page, ThreadCB thread)
+	{
+//		What is saved is the page as it is now; writes during the I/O stay unsaved.
+		int writes = page.writes;
+		if (SwapCache.enabled)
+			SwapCache.store(page, thread);
+		else
+			write(page, thread);
+		if (thread.getStatus() != ThreadKill) {
+			page.savedWrites = writes;
+			if (!page.backed) {
+				page.backed = true;
+				slots++;
+			}
+		}
+	}
+
+	/**
+	Purpose: Writes a page to its task's swap file, and counts the write.
+	*/
+	static void write(PageTableEntry page, ThreadCB thread)
+	{
+		long start = HClock.get();
+		page.getTask().getSwapFile().write(page.getID(), page, thread);
+		MemoryMetrics.swapped(page, thread, false, HClock.get() - start);
+	}
+
+	/**
+	Purpose: Reserves the frame of a neighbour that can go in the cluster.
+
+	Output:
+		false if it cannot, or another task reserved its frame first.
+	*/
+	private static boolean reserve(PageTableEntry page, TaskCB owner)
+	{
+		return canCluster(page) && page.getFrame().markReserved(owner);
+	}
+
+	private static boolean canCluster(PageTableEntry page)
+	{
+		FrameTableEntry frame = page.getFrame();
+		return page.isValid() && frame != null && frame.getPage() == page && !page.swapCopyCurrent()
+			&& ReplacementPolicy.isEvictable(frame);
+	}
+
+	/**
+	Purpose: Reads the pages after a page that was just swapped in, while
+			 there are free frames to spare.
+	*/
+	static void readAhead(PageTableEntry page, ThreadCB thread)
+	{
+		PageTableEntry[] pages = page.getTask().getPageTable().pages;
+		int last = Math.min(pages.length - 1, page.getID() + readAround - 1);
+		for (int i = page.getID() + 1; i <= last; i++) {
+			if (PageFaultHandler.numFreeFrames() <= MMU.lowWater)
+				return;
+			if (PageFaultHandler.swapInFree(pages[i], thread))
+				readAroundPages++;
+			if (thread.getStatus() == ThreadKill)
+				return;
+		}
+	}
+
+	static String report()
+	{
+		return "swap clusters: " + clusteredWrites + " neighbouring pages written, "
+			+ readAroundPages + " pages read around faults, " + zeroFills + " reads avoided by zero-filling, "
+			+ slots + " swap slots used";
+	}
+}
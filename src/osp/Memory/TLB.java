@@ -0,0 +1,160 @@
+package osp.Memory;
+
+/**
+Purpose: A software translation lookaside buffer in front of the page table.
+		 It maps virtual page numbers of the task whose page table is in the
+		 PTBR to their PageTableEntry. It is set-associative: a page number can
+		 only be kept in the "associativity" ways of set (page number % sets),
+		 and the least recently used way of a set is replaced.
+
+		 Only valid pages are put in the TLB. The TLB is flushed when the PTBR
+		 changes (context switch) or when the owning task is torn down, and an
+		 entry is invalidated when its page is evicted.
+
+		 Size and associativity come from the TLBEntries and TLBAssociativity
+		 keys in Misc/params.osp; TLBEntries 0 (the default) turns the TLB off.
+		 The TLB is there to be studied (hit rates, flushes per context
+		 switch): in software a lookup costs more than the page-table index
+		 it stands in front of, so it does not make translation faster.
+
+@OSPProject Memory
+*/
+class TLB
+{
+	private final int sets;
+	private final int ways;
+	private final int[] tags;
+	private final PageTableEntry[] entries;
+	private final long[] lastUse;
+	private long clock;
+	private PageTable owner;
+
+	long hits;
+	long misses;
+	long flushes;
+	long invalidations;
+
+	TLB(int size, int associativity)
+	{
+		ways = Math.max(1, Math.min(associativity, size));
+		sets = Math.max(1, size / ways);
+		tags = new int[sets * ways];
+		entries = new PageTableEntry[sets * ways];
+		lastUse = new long[sets * ways];
+		for (int i = 0; i < tags.length; i++)
+			tags[i] = -1;
+	}
+
+	/**
+	Purpose: Looks up a page of the page table in the PTBR.
+
+	Inputs:
+		- pageTable		the page table in the PTBR
+		- pageNumber	the virtual page number
+
+	Output:
+		The page, or null on a miss.
+	*/
+	PageTableEntry lookup(PageTable pageTable, int pageNumber)
+	{
+		if (pageTable != owner) {
+//			The PTBR was switched: none of the entries belong to this task.
+			flush();
+			owner = pageTable;
+			misses++;
+			return null;
+		}
+		int base = (pageNumber % sets) * ways;
+		for (int i = base; i < base + ways; i++) {
+			if (tags[i] == pageNumber) {
+				PageTableEntry page = entries[i];
+				if (!page.isValid()) {
+					drop(i);
+					break;
+				}
+				lastUse[i] = ++clock;
+				hits++;
+				return page;
+			}
+		}
+		misses++;
+		return null;
+	}
+
+	/**
+	Purpose: Puts a valid page of the page table in the PTBR into the TLB,
+			 replacing the least recently used way of its set.
+	*/
+	void insert(PageTable pageTable, int pageNumber, PageTableEntry page)
+	{
+		if (pageTable != owner) {
+			flush();
+			owner = pageTable;
+		}
+		int base = (pageNumber % sets) * ways;
+		int victim = base;
+		for (int i = base; i < base + ways; i++) {
+			if (tags[i] == pageNumber || tags[i] < 0) {
+				victim = i;
+				break;
+			}
+			if (lastUse[i] < lastUse[victim])
+				victim = i;
+		}
+		tags[victim] = pageNumber;
+		entries[victim] = page;
+		lastUse[victim] = ++clock;
+	}
+
+	/**
+	Purpose: Removes a page from the TLB, if it is there. Called when the
+			 page is taken out of its frame.
+	*/
+	void invalidate(PageTableEntry page)
+	{
+		if (owner == null || page.getTask().getPageTable() != owner)
+			return;
+		int pageNumber = page.getID();
+		int base = (pageNumber % sets) * ways;
+		for (int i = base; i < base + ways; i++) {
+			if (tags[i] == pageNumber) {
+				drop(i);
+				invalidations++;
+				return;
+			}
+		}
+	}
+
+	/**
+	Purpose: Empties the TLB if it holds pages of the given page table.
+			 Called when the task owning the page table is torn down.
+	*/
+	void flush(PageTable pageTable)
+	{
+		if (pageTable == owner) {
+			flush();
+			owner = null;
+		}
+	}
+
+	private void flush()
+	{
+		for (int i = 0; i < tags.length; i++)
+			drop(i);
+		flushes++;
+	}
+
+	private void drop(int i)
+	{
+		tags[i] = -1;
+		entries[i] = null;
+	}
+
+	public String toString()
+	{
+		long references = hits + misses;
+		return "TLB " + tags.length + " entries, " + ways + "-way: " + hits + " hits, " + misses + " misses ("
+			+ (references == 0 ? 0 : 100 * hits / references) + "% hit rate), "
+			+ flushes + " flushes, " + invalidations + " invalidations";
+	}
+}
@@ -0,0 +1,87 @@
+package osp.Memory;
+
+import osp.Hardware.*;
+
+/**
+Purpose: The WSClock policy. Every frame remembers the last time (in simulated
+		 ticks) its reference bit was seen set. A frame that has not been used
+		 for longer than the working-set window is outside its task's working
+		 set. The hand prefers such frames that are clean, then such frames that
+		 are dirty, and, if every page is in a working set, the least recently
+		 used frame it passed.
+
+		 The window is set with the "WSClockWindow" key in Misc/params.osp.
+
+@OSPProject Memory
+*/
+class WSClockPolicy extends ReplacementPolicy
+{
+	private final long window;
+	private long[] lastUse;
+	private int hand;
+
+	WSClockPolicy(long window)
+	{
+		this.window = window;
+	}
+
+	String getName()
+	{
+		return "WSClock";
+	}
+
+	FrameTableEntry findVictim()
+	{
+		int size = MMU.getFrameTableSize();
+		if (lastUse == null)
+			lastUse = new long[size];
+		long now = HClock.get();
+
+		FrameTableEntry oldDirty = null;
+		FrameTableEntry oldest = null;
+		for (int counter = 0; counter < size; counter++) {
+//			Step over a run of locked frames at once.
+			if (FrameBits.pinned > 0) {
+				int run = FrameBits.pinnedRun(hand, size - counter);
+				if (run > 0) {
+					hand = (hand + run) % size;
+					counter += run - 1;
+					pinnedSkipped += run;
+					continue;
+				}
+			}
+			FrameTableEntry frame = MMU.getFrame(hand);
+			hand = (hand + 1) % size;
+			framesScanned++;
+
+			if (PageFaultHandler.isFree(frame)) {
+				PageFaultHandler.releaseFrame(frame);
+				return PageFaultHandler.getFreeFrame();
+			}
+			if (!isEvictable(frame))
+				continue;
+			int id = frame.getID();
+			if (frame.isReferenced()) {
+//				Still in the working set: remember when it was used.
+				frame.markReferenced(false);
+				lastUse[id] = now;
+			} else if (now - lastUse[id] > window) {
+				if (!frame.isDirty())
+					return frame;
+				if (oldDirty == null)
+					oldDirty = frame;
+			}
+			if (oldest == null || lastUse[id] < lastUse[oldest.getID()])
+				oldest = frame;
+		}
+		if (oldDirty != null)
+			return oldDirty;
+		return oldest;
+	}
+
+	void frameLoaded(FrameTableEntry frame, PageTableEntry page)
+	{
+		if (lastUse != null)
+			lastUse[frame.getID()] = HClock.get();
+	}
+}
@@ -0,0 +1,234 @@
+package osp.Memory;
+
+import java.util.*;
+
+/**
+Purpose: Per-task frame quotas sized by page-fault frequency (PFF), with load
+		 control when the tasks together want more frames than there are.
+
+		 Every task's page table counts the task's references and faults. On
+		 a fault, the number of the task's references since its previous
+		 fault is compared with PFFThreshold. A task that faults sooner than
+		 that is growing: its quota is raised to cover one more page than it
+		 has in memory. A task that went more than twice as long gives up a
+		 frame of quota. Quotas never drop below MinFrames.
+
+		 Quotas are enforced only under memory pressure, i.e. when no more
+		 than MMU.lowWater frames are free: a task that is not growing and is
+		 at its quota replaces one of its own pages, and any other task takes
+		 a page from a task that is over its quota before the global
+		 replacement policy is asked. Pages of a task are chosen with a
+		 second-chance sweep over its resident pages.
+
+		 When the quotas of the active tasks add up to more than the frame
+		 table, the task with the largest quota is deactivated: its quota is
+		 halved, so its pages go first, until the others leave room for it
+		 again. Its faults keep moving the quota it will get back, so a task
+		 that needs fewer frames once deactivated fits sooner. OSP gives the
+		 Memory module no say over the scheduler, so the deactivated task
+		 keeps running; cutting it down to nothing would only make it fault
+		 all the more.
+
+		 Turned on with the WorkingSetControl key of the [Memory] section in
+		 Misc/params.osp.
+
+@OSPProject Memory
+*/
+class WorkingSets
+{
+	static boolean enabled;
+	static int threshold;
+	static int minFrames;
+
+//	Page tables of the tasks alive, and of those deactivated, oldest first.
+	static List<PageTable> tables;
+	private static List<PageTable> deactivated;
+
+//	Faults served by a task's own page, by a page of an over-quota task,
+//	and tasks deactivated and brought back.
+	static long localReplacements;
+	static long quotaSteals;
+	static long deactivations;
+	static long reactivations;
+
+	static void init()
+	{
+		enabled = MemoryParameters.getBoolean("WorkingSetControl", true);
+		threshold = Math.max(1, MemoryParameters.getInt("PFFThreshold", 50));
+		minFrames = Math.max(1, MemoryParameters.getInt("MinFrames", 2));
+		tables = new ArrayList<PageTable>();
+		deactivated = new ArrayList<PageTable>();
+		localReplacements = 0;
+		quotaSteals = 0;
+		deactivations = 0;
+		reactivations = 0;
+	}
+
+	static void created(PageTable pageTable)
+	{
+		pageTable.quota = Math.min(minFrames, MMU.getFrameTableSize());
+		tables.add(pageTable);
+	}
+
+	static void destroyed(PageTable pageTable)
+	{
+		tables.remove(pageTable);
+		if (deactivated.remove(pageTable))
+			pageTable.quota = pageTable.savedQuota;
+		balance();
+	}
+
+	/**
+	Purpose: Called when "page" faults. Adjusts the quota of its task from
+			 the time since the task's previous fault.
+	*/
+	static void faulted(PageTableEntry page)
+	{
+		PageTable pageTable = page.getTask().getPageTable();
+		long references = pageTable.counters.references();
+		long gap = references - pageTable.lastFaultReference;
+		pageTable.lastFaultReference = references;
+		if (!enabled)
+			return;
+		int resident = pageTable.residentPages.size();
+		pageTable.growing = gap < threshold;
+//		A deactivated task's quota stays halved; the one it gets back moves.
+		boolean inactive = deactivated.contains(pageTable);
+		int quota = inactive ? pageTable.savedQuota : pageTable.quota;
+		if (pageTable.growing) {
+			if (resident < quota || quota >= MMU.getFrameTableSize())
+				return;
+			quota = resident + 1;
+		} else if (gap > 2 * threshold && quota > minFrames) {
+			quota = Math.max(minFrames, Math.min(quota, resident) - 1);
+		} else {
+			return;
+		}
+		if (inactive)
+			pageTable.savedQuota = quota;
+		else
+			pageTable.quota = quota;
+		balance();
+	}
+
+	/**
+	Purpose: Picks the frame for a fault of "pageTable" under memory pressure.
+
+	Output:
+		An occupied frame that can be evicted, of the faulting task if it
+		is at its quota or else of a task over its quota; null if the
+		quotas do not decide and the fault should go the usual way.
+	*/
+	static FrameTableEntry victim(PageTable pageTable)
+	{
+		if (!pageTable.growing && pageTable.residentPages.size() >= pageTable.quota) {
+			FrameTableEntry frame = sweep(pageTable);
+			if (frame != null) {
+				localReplacements++;
+				return frame;
+			}
+		}
+		for (int i = 0; i < tables.size(); i++) {
+			PageTable other = tables.get(i);
+			if (other != pageTable && other.residentPages.size() > other.quota) {
+				FrameTableEntry frame = sweep(other);
+				if (frame != null) {
+					quotaSteals++;
+					return frame;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	Purpose: Second-chance sweep over the resident pages of one task.
+	*/
+	private static FrameTableEntry sweep(PageTable pageTable)
+	{
+		IndexSet resident = pageTable.residentPages;
+		for (int step = 0; step < 2 * resident.size(); step++) {
+			pageTable.hand = (pageTable.hand + 1) % resident.size();
+			PageTableEntry page = pageTable.pages[resident.get(pageTable.hand)];
+			FrameTableEntry frame = page.getFrame();
+			if (frame == null || frame.getPage() != page || !ReplacementPolicy.isEvictable(frame))
+				continue;
+			if (frame.isReferenced())
+				frame.markReferenced(false);
+			else
+				return frame;
+		}
+		return null;
+	}
+
+	/**
+	Purpose: Deactivates the largest tasks while the active quotas add up to
+			 more than the frame table, and brings deactivated tasks back when
+			 they fit again.
+	*/
+	private static void balance()
+	{
+		int frames = MMU.getFrameTableSize();
+		int demand = 0;
+		for (int i = 0; i < tables.size(); i++)
+			demand += tables.get(i).quota;
+		while (demand > frames) {
+			PageTable largest = null;
+			for (int i = 0; i < tables.size(); i++) {
+				PageTable pageTable = tables.get(i);
+				if (!deactivated.contains(pageTable) && (largest == null || pageTable.quota > largest.quota))
+					largest = pageTable;
+			}
+			if (largest == null || largest.quota <= minFrames)
+				break;
+			int reduced = Math.max(minFrames, largest.quota / 2);
+			demand -= largest.quota - reduced;
+			largest.savedQuota = largest.quota;
+			largest.quota = reduced;
+			deactivated.add(largest);
+			deactivations++;
+		}
+		while (!deactivated.isEmpty()) {
+			PageTable oldest = deactivated.get(0);
+			if (demand - oldest.quota + oldest.savedQuota > frames)
+				break;
+			demand += oldest.savedQuota - oldest.quota;
+			oldest.quota = oldest.savedQuota;
+			deactivated.remove(0);
+			reactivations++;
+		}
+	}
+
+	/**
+	Purpose: The working set of a task: its resident pages referenced since
+			 the replacement policy last cleared their reference bits.
+	*/
+	static int workingSetSize(PageTable pageTable)
+	{
+		int size = 0;
+		for (int i = 0; i < pageTable.residentPages.size(); i++) {
+			FrameTableEntry frame = pageTable.pages[pageTable.residentPages.get(i)].getFrame();
+			if (frame != null && frame.isReferenced())
+				size++;
+		}
+		return size;
+	}
+
+	static String taskReport(PageTable pageTable)
+	{
+		return "task " + pageTable.getTask().getID() + (deactivated.contains(pageTable) ? " (deactivated)" : "")
+			+ ": " + pageTable.residentPages.size() + " resident, quota " + pageTable.quota
+			+ ", working set " + workingSetSize(pageTable) + ", " + pageTable.counters + ", "
+			+ pageTable.memoryReport();
+	}
+
+	static String report()
+	{
+		StringBuilder report = new StringBuilder("working sets: " + localReplacements + " local replacements, "
+			+ quotaSteals + " pages taken from tasks over quota, " + deactivations + " deactivations, "
+			+ reactivations + " reactivations");
+		for (int i = 0; i < tables.size(); i++)
+			report.append("\nMemory:   ").append(taskReport(tables.get(i)));
+		return report.toString();
+	}
+}
@@ -0,0 +1,99 @@
+package osp.Memory;
+
+import osp.IFLModules.*;
+import osp.Threads.*;
+import osp.Utilities.*;
+
+/**
+Purpose: A write-back daemon that trickles dirty pages out to swap ahead of
+		 need, so that when the replacement policy picks them later they are
+		 clean and can be dropped at fault time without a write.
+
+		 OSP wakes the daemon every WriteBackInterval ticks (0 turns it off).
+		 If no page fault is in flight, it writes back up to WriteBackBatch
+		 dirty pages, together with their dirty neighbours (SwapCluster),
+		 picking frames that are not referenced, locked or reserved: pages
+		 in use would likely be written again before they are evicted. The
+		 frames are found with FrameBits, going round the frame table from
+		 where the last wake-up stopped. The pages stay resident.
+
+@OSPProject Memory
+*/
+class WriteBackDaemon extends GlobalVariables implements DaemonInterface
+{
+	static int interval;
+	static int batch;
+//	The FrameBits word the next wake-up starts at.
+	private static int word;
+
+//	Wake-ups, wake-ups skipped because a page fault was in flight, and
+//	pages written back (not counting neighbours written with them).
+	static long wakeups;
+	static long busy;
+	static long pagesWritten;
+
+	static void init()
+	{
+		interval = Math.max(0, MemoryParameters.getInt("WriteBackInterval", 250));
+		batch = Math.max(1, MemoryParameters.getInt("WriteBackBatch", 4));
+		word = 0;
+		wakeups = 0;
+		busy = 0;
+		pagesWritten = 0;
+	}
+
+	/**
+	Purpose: Called by OSP every WriteBackInterval ticks with the daemon's thread.
+
+	Inputs:
+		- thread	the thread the daemon runs in; it is suspended while
+					pages are written back.
+	*/
+	public void unleash(ThreadCB thread)
+	{
+		Concurrency.lock();
+		try {
+			flush(thread);
+		} finally {
+			Concurrency.unlock();
+		}
+	}
+
+	static void flush(ThreadCB thread)
+	{
+		wakeups++;
+		if (FaultTable.size() > 0) {
+			busy++;
+			return;
+		}
+		int words = FrameBits.dirty.length;
+		int written = 0;
+		for (int n = 0; n < words && written < batch; n++) {
+			int w = word;
+			word = (word + 1) % words;
+			long candidates = FrameBits.dirty[w] & ~FrameBits.referenced[w] & FrameBits.evictable(w);
+			while (candidates != 0 && written < batch) {
+				int id = (w << 6) + Long.numberOfTrailingZeros(candidates);
+				candidates &= candidates - 1;
+				FrameTableEntry frame = MMU.getFrame(id);
+				PageTableEntry page = frame.getPage();
+//				The bits are a hint: check the frame itself.
+				if (page == null || page.swapCopyCurrent() || frame.isReferenced()
+						|| !ReplacementPolicy.isEvictable(frame)) {
+					FrameBits.resync(frame);
+					continue;
+				}
+				if (!PageOutDaemon.writeBack(frame, thread))
+					return;
+				written++;
+				pagesWritten++;
+			}
+		}
+	}
+
+	static String report()
+	{
+		return "write-back daemon: " + wakeups + " wake-ups, " + busy + " skipped during page faults, "
+			+ pagesWritten + " pages written";
+	}
+}